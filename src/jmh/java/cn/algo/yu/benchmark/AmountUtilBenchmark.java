@@ -0,0 +1,55 @@
+package cn.algo.yu.benchmark;
+
+import cn.algo.yu.AmountUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AmountUtil转换中文大写金额
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AmountUtilBenchmark {
+    @Param({"88.00", "1234567.89", "100020003000.05"})
+    public String amount;
+
+    private long cents;
+    private BigDecimal decimal;
+
+    @Setup
+    public void setUp() {
+        decimal = new BigDecimal(amount);
+        cents = decimal.movePointRight(2).longValueExact();
+    }
+
+    @Benchmark
+    public String toChinese() {
+        return AmountUtil.toChinese(amount);
+    }
+
+    @Benchmark
+    public String toChineseCents() {
+        return AmountUtil.toChinese(cents);
+    }
+
+    @Benchmark
+    public String toChineseBigDecimal() {
+        return AmountUtil.toChinese(decimal);
+    }
+}
@@ -0,0 +1,111 @@
+package cn.algo.yu.benchmark;
+
+import cn.algo.yu.CompressUtil;
+import cn.algo.yu.XMLUtil;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CompressUtil各算法的吞吐量和压缩率
+ * 数据是拼接的微信支付XML报文（约64KB）和一批长度前缀的短消息（约16KB，模拟SendBuffer的一次发送）。
+ * 压缩率 = compressedBytes / rawBytes，两个计数器是同一次测量中的累计值，直接相除即可。
+ * LZ4和ZSTD依赖jmh profile中的lz4-java和zstd-jni。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressUtilBenchmark {
+    @Param({"GZIP", "DEFLATE", "LZ4", "ZSTD"})
+    private CompressUtil.Codec codec;
+
+    @Param({"xml", "batch"})
+    private String payload;
+
+    private byte[] data;
+    private byte[] compressed;
+
+    /**
+     * 每次调用处理的原始字节数和压缩后字节数
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long rawBytes;
+        public long compressedBytes;
+    }
+
+    @Setup
+    public void setUp() {
+        if (!codec.isAvailable()) {
+            throw new IllegalStateException(codec + " is not on the classpath");
+        }
+        data = "xml".equals(payload) ? xml() : batch();
+        compressed = CompressUtil.compress(codec, data);
+    }
+
+    @Benchmark
+    public byte[] compress(Bytes bytes) {
+        byte[] result = CompressUtil.compress(codec, data);
+        bytes.rawBytes += data.length;
+        bytes.compressedBytes += result.length;
+        return result;
+    }
+
+    @Benchmark
+    public byte[] decompress(Bytes bytes) {
+        byte[] result = CompressUtil.decompress(codec, compressed);
+        bytes.rawBytes += result.length;
+        bytes.compressedBytes += compressed.length;
+        return result;
+    }
+
+    private static byte[] xml() {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 64 * 1024) {
+            Map<String, String> map = new LinkedHashMap<>();
+            map.put("appid", "wxd2fd816265991109");
+            map.put("mch_id", "1336573601");
+            map.put("nonce_str", Long.toString(random.nextLong() & Long.MAX_VALUE, 36).toUpperCase());
+            map.put("body", "腾讯充值中心-QQ会员充值");
+            map.put("out_trade_no", Long.toString(20150806125346L + random.nextInt(100000)));
+            map.put("total_fee", Integer.toString(random.nextInt(100000)));
+            map.put("spbill_create_ip", "123.12." + random.nextInt(256) + "." + random.nextInt(256));
+            map.put("notify_url", "http://www.weixin.qq.com/wxpay/pay.php");
+            map.put("trade_type", "JSAPI");
+            map.put("openid", "oUpF8uMuAJO_M2pxb1Q9zNjWeS6o");
+            builder.append(XMLUtil.convertToXML(map));
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] batch() {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 16 * 1024) {
+            String message = "{\"event\":\"click\",\"user\":" + random.nextInt(1000000) + ",\"ts\":" + (1600000000000L + random.nextInt())
+                + ",\"page\":\"/item/" + random.nextInt(5000) + "\"}";
+            builder.append(message.length()).append(':').append(message);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,57 @@
+package cn.algo.yu.benchmark;
+
+import cn.algo.yu.HashUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HashUtil的MD5哈希和十六进制编码
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashUtilBenchmark {
+    // ID长度的输入和一段较长的文本
+    @Param({"32", "1024"})
+    public int length;
+
+    private String input;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        input = builder.toString();
+    }
+
+    @Benchmark
+    public String md5LowerCase32() {
+        return HashUtil.MD5LowerCase32(input);
+    }
+
+    @Benchmark
+    public String md5UpperCase32() {
+        return HashUtil.MD5UpperCase32(input);
+    }
+
+    @Benchmark
+    public String md5LowerCase16() {
+        return HashUtil.MD5LowerCase16(input);
+    }
+}
@@ -0,0 +1,57 @@
+package cn.algo.yu.benchmark;
+
+import cn.algo.yu.GPSUtil;
+import cn.algo.yu.IpUtil;
+import cn.algo.yu.VersionUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IpUtil、VersionUtil和GPSUtil
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MiscUtilBenchmark {
+    // 字段不声明为final，避免被常量折叠
+    private String ip = "192.168.100.254";
+    private long ipLong = 3232261374L;
+    private String version1 = "1.10.3.27";
+    private String version2 = "1.10.12";
+    private double lon1 = 116.397128;
+    private double lat1 = 39.916527;
+    private double lon2 = 121.473701;
+    private double lat2 = 31.230416;
+
+    @Benchmark
+    public long ip2long() {
+        return IpUtil.ip2long(ip);
+    }
+
+    @Benchmark
+    public String long2ip() {
+        return IpUtil.long2ip(ipLong);
+    }
+
+    @Benchmark
+    public int compareVersion() {
+        return VersionUtil.compareVersion(version1, version2);
+    }
+
+    @Benchmark
+    public double getDistance() {
+        return GPSUtil.getDistance(lon1, lat1, lon2, lat2);
+    }
+}
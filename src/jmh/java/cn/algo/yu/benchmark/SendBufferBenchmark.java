@@ -0,0 +1,97 @@
+package cn.algo.yu.benchmark;
+
+import cn.algo.yu.RingSendBuffer;
+import cn.algo.yu.SendBuffer;
+import cn.algo.yu.SendBufferListener;
+import cn.algo.yu.StripedSendBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+/**
+ * SendBuffer各种实现在1、8、64个线程下的添加吞吐
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SendBufferBenchmark {
+    @Param({"lock", "ring", "striped"})
+    public String engine;
+
+    @Param({"100"})
+    public int size;
+
+    private Predicate<Integer> add;
+    private Runnable shutDown;
+    private final LongAdder consumed = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BiPredicate<List<Integer>, SendBuffer.Action> consumeFunction = (list, action) -> {
+            consumed.add(list.size());
+            return true;
+        };
+        switch (engine) {
+            case "ring":
+                RingSendBuffer<Integer> ring = new RingSendBuffer<>(size, 100, size * 64, consumeFunction);
+                add = ring::add;
+                shutDown = ring::shutDown;
+                break;
+            case "striped":
+                StripedSendBuffer<Integer> striped = new StripedSendBuffer<>(Runtime.getRuntime().availableProcessors(),
+                    null, SendBuffer.builder(size, 100, consumeFunction).listener(SendBufferListener.NONE));
+                add = striped::add;
+                shutDown = striped::shutDown;
+                break;
+            default:
+                SendBuffer<Integer> buffer = SendBuffer.builder(size, 100, consumeFunction)
+                    .listener(SendBufferListener.NONE).build();
+                add = buffer::add;
+                shutDown = buffer::shutDown;
+                break;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        shutDown.run();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean add1() {
+        return add.test(1);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean add8() {
+        return add.test(1);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean add64() {
+        return add.test(1);
+    }
+}
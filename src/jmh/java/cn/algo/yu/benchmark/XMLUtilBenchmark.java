@@ -0,0 +1,58 @@
+package cn.algo.yu.benchmark;
+
+import cn.algo.yu.XMLUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XMLUtil的Map与XML互相转换，数据是一个典型的微信支付统一下单请求
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XMLUtilBenchmark {
+    private Map<String, String> map;
+    private String xml;
+
+    @Setup
+    public void setUp() {
+        map = new HashMap<>();
+        map.put("appid", "wxd2fd816265991109");
+        map.put("mch_id", "1336573601");
+        map.put("nonce_str", "5K8264ILTKCH16CQ2502SI8ZNMTM67VS");
+        map.put("body", "腾讯充值中心-QQ会员充值");
+        map.put("out_trade_no", "20150806125346");
+        map.put("total_fee", "88");
+        map.put("spbill_create_ip", "123.12.12.123");
+        map.put("notify_url", "http://www.weixin.qq.com/wxpay/pay.php");
+        map.put("trade_type", "JSAPI");
+        map.put("openid", "oUpF8uMuAJO_M2pxb1Q9zNjWeS6o");
+        map.put("sign", "0CB01533B8C1EF103065174F50BCA001");
+        xml = XMLUtil.convertToXML(map);
+    }
+
+    @Benchmark
+    public String convertToXML() {
+        return XMLUtil.convertToXML(map);
+    }
+
+    @Benchmark
+    public Map<String, String> convertToMap() {
+        return XMLUtil.convertToMap(xml);
+    }
+}
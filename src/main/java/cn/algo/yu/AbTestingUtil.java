@@ -1,7 +1,10 @@
 package cn.algo.yu;
 
 import org.apache.commons.math3.distribution.NormalDistribution;
-import org.apache.commons.math3.stat.StatUtils;
+
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
 
 /**
  * 此工具类适用于AB测试中的计算。
@@ -34,12 +37,13 @@ public class AbTestingUtil {
 
     /**
      * 获取一组数据的平均值
+     * 与下面的方差、标准差一样通过{@link #summarize(double[])}计算，需要多个统计量时直接调用它只读一遍数据
      *
      * @param data 数据
      * @return 平均值
      */
     public static double mean(double[] data) {
-        return StatUtils.mean(data);
+        return summarize(data).getMean();
     }
 
     /**
@@ -50,7 +54,7 @@ public class AbTestingUtil {
      * @return 样本方差
      */
     public static double variance(double[] data) {
-        return StatUtils.variance(data);
+        return summarize(data).getVariance();
     }
 
     /**
@@ -61,7 +65,7 @@ public class AbTestingUtil {
      * @return 总体方差
      */
     public static double populationVariance(double[] data) {
-        return StatUtils.populationVariance(data);
+        return summarize(data).getPopulationVariance();
     }
 
     /**
@@ -71,7 +75,46 @@ public class AbTestingUtil {
      * @return 标准差
      */
     public static double standardDeviation(double[] data) {
-        return Math.sqrt(variance(data));
+        return summarize(data).getStandardDeviation();
+    }
+
+    /**
+     * 一遍读取数据同时计算数量、均值、方差和最大最小值
+     * 使用补偿求和，数据量大时用ForkJoin公共池并行计算；结果可以直接传给confidenceInterval、studentT等方法。
+     *
+     * @param data 数据
+     * @return 统计量
+     */
+    public static OnlineStatistics summarize(double[] data) {
+        return StatisticsKernels.summarize(data, 0, data.length);
+    }
+
+    /**
+     * 统计数组中[from, to)范围内的数据，见{@link #summarize(double[])}
+     */
+    public static OnlineStatistics summarize(double[] data, int from, int to) {
+        return StatisticsKernels.summarize(data, from, to);
+    }
+
+    /**
+     * 统计DoubleBuffer中position到limit之间的数据，不改变position，可以是堆外内存
+     *
+     * @param data 数据
+     * @return 统计量
+     */
+    public static OnlineStatistics summarize(DoubleBuffer data) {
+        return StatisticsKernels.summarize(data);
+    }
+
+    /**
+     * 统计文件中连续存放的double，文件按窗口内存映射，可以大于堆内存
+     *
+     * @param path  文件
+     * @param order 字节序，DataOutputStream写出的为BIG_ENDIAN，numpy的tofile在x86上为LITTLE_ENDIAN
+     * @return 统计量
+     */
+    public static OnlineStatistics summarize(Path path, ByteOrder order) {
+        return StatisticsKernels.summarize(path, order);
     }
 
     /**
@@ -102,9 +145,7 @@ public class AbTestingUtil {
      * @return 均值的+-误差界限值
      */
     public static double confidenceDifference(double[] data, Confidence confidence) {
-        int n = data.length;
-        double standard = standardDeviation(data);
-        return confidence.value * standard / Math.sqrt(n);
+        return confidenceDifference(summarize(data), confidence);
     }
 
     /**
@@ -119,6 +160,17 @@ public class AbTestingUtil {
         return confidence.value * standardDeviation / Math.sqrt(n);
     }
 
+    /**
+     * 通过在线统计量获取置信区间的误差上下限值
+     *
+     * @param statistics 在线统计量
+     * @param confidence 置信水平
+     * @return 均值的+-误差界限值
+     */
+    public static double confidenceDifference(OnlineStatistics statistics, Confidence confidence) {
+        return confidence.value * statistics.getStandardDeviation() / Math.sqrt(statistics.getCount());
+    }
+
     /**
      * 获取置信区间
      *
@@ -127,9 +179,7 @@ public class AbTestingUtil {
      * @return 置信区间[下限，上限]
      */
     public static double[] confidenceInterval(double[] data, Confidence confidence) {
-        double mean = StatUtils.mean(data);
-        double difference = confidenceDifference(data, confidence);
-        return new double[]{mean - difference, mean + difference};
+        return confidenceInterval(summarize(data), confidence);
     }
 
     /**
@@ -146,6 +196,19 @@ public class AbTestingUtil {
         return new double[]{mean - difference, mean + difference};
     }
 
+    /**
+     * 通过在线统计量获取置信区间，不需要保留全部数据
+     *
+     * @param statistics 在线统计量
+     * @param confidence 置信水平
+     * @return 置信区间[下限，上限]
+     */
+    public static double[] confidenceInterval(OnlineStatistics statistics, Confidence confidence) {
+        double mean = statistics.getMean();
+        double difference = confidenceDifference(statistics, confidence);
+        return new double[]{mean - difference, mean + difference};
+    }
+
     /**
      * 当数据相互独立、是从两个正态分布的样本中随机抽样的、并且两个独立组有相等的方差时，您可以使用该检验。
      * 如果两组方差不等，该怎么办？
@@ -186,6 +249,19 @@ public class AbTestingUtil {
         return meanDiff / Math.sqrt(denominator);
     }
 
+    /**
+     * 通过两组在线统计量计算T统计量，样本数量可以超过int的范围
+     *
+     * @param a 样本A的在线统计量
+     * @param b 样本B的在线统计量
+     * @return T统计量
+     */
+    public static double studentT(OnlineStatistics a, OnlineStatistics b) {
+        double meanDiff = a.getMean() - b.getMean();
+        double denominator = (a.getVariance() / a.getCount()) + (b.getVariance() / b.getCount());
+        return meanDiff / Math.sqrt(denominator);
+    }
+
     /**
      * 根据T统计量计算P值
      *
@@ -215,4 +291,15 @@ public class AbTestingUtil {
         double tScore = studentT(nA, nB, meanA, meanB, standardDeviationA, standardDeviationB);
         return getPValue(tScore);
     }
+
+    /**
+     * 通过两组在线统计量获取P值
+     *
+     * @param a 样本A的在线统计量
+     * @param b 样本B的在线统计量
+     * @return P值
+     */
+    public static double getPValue(OnlineStatistics a, OnlineStatistics b) {
+        return getPValue(studentT(a, b));
+    }
 }
@@ -0,0 +1,213 @@
+package cn.algo.yu;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SendBuffer的自适应批次控制器
+ * 根据实际的到达速率和处理函数耗时，在运行时调整发送尺寸和定时发送的间隔。
+ * 有两种目标：
+ * 1、目标延迟：让添加到处理完成的p99延迟不超过目标值，在此前提下尽量攒大批次；
+ * 2、目标吞吐：让批次足够大，使处理函数的单批耗时能够撑住目标吞吐，在此前提下尽量小批次。
+ * 控制器有状态，一个控制器只能给一个SendBuffer使用。
+ */
+public class AdaptiveBatchController {
+    // 每隔多久调整一次
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // 延迟样本数
+    private static final int SAMPLES = 1024;
+
+    private final long targetLatencyNanos;
+    private final long targetThroughput;
+    private int minSize = 1;
+    private int maxSize = 100_000;
+    private long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+    private long maxDelayNanos = TimeUnit.SECONDS.toNanos(10);
+
+    private final LongAdder arrivals = new LongAdder();
+    private final long[] latencySamples = new long[SAMPLES];
+    private int sampleCount;
+    // 处理函数单批耗时的指数移动平均
+    private volatile double consumeNanos;
+    private volatile int size;
+    private volatile long delayNanos;
+    // 目标延迟模式下留给攒批的等待时间
+    private double waitBudgetNanos;
+    private long lastAdjustNanos = System.nanoTime();
+    private double arrivalRate;
+
+    private AdaptiveBatchController(long targetLatencyNanos, long targetThroughput) {
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.targetThroughput = targetThroughput;
+    }
+
+    /**
+     * @param p99  添加到处理完成的p99延迟目标
+     * @param unit 时间单位
+     * @return 目标延迟的控制器
+     */
+    public static AdaptiveBatchController targetLatency(long p99, TimeUnit unit) {
+        return new AdaptiveBatchController(Math.max(unit.toNanos(p99), 1L), 0L);
+    }
+
+    /**
+     * @param eventsPerSecond 每秒需要处理的数据条数
+     * @return 目标吞吐的控制器
+     */
+    public static AdaptiveBatchController targetThroughput(long eventsPerSecond) {
+        return new AdaptiveBatchController(0L, Math.max(eventsPerSecond, 1L));
+    }
+
+    /**
+     * 发送尺寸的调整范围，默认1到100000
+     */
+    public AdaptiveBatchController sizeRange(int min, int max) {
+        this.minSize = Math.max(min, 1);
+        this.maxSize = Math.max(max, this.minSize);
+        return this;
+    }
+
+    /**
+     * 定时发送间隔的调整范围，默认1毫秒到10秒，不受SendBuffer最小100毫秒的限制
+     */
+    public AdaptiveBatchController delayRange(long min, long max, TimeUnit unit) {
+        this.minDelayNanos = Math.max(unit.toNanos(min), 1L);
+        this.maxDelayNanos = Math.max(unit.toNanos(max), this.minDelayNanos);
+        return this;
+    }
+
+    /**
+     * @return 当前的发送尺寸
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return 当前的定时发送间隔（纳秒）
+     */
+    public long getDelayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * @return 最近一个窗口的p99延迟（纳秒）
+     */
+    public synchronized long getP99LatencyNanos() {
+        return percentile99();
+    }
+
+    /**
+     * 以SendBuffer构造时的配置作为初始值
+     */
+    synchronized void init(int size, long delayMillis) {
+        this.size = clamp(size, minSize, maxSize);
+        this.delayNanos = clamp(TimeUnit.MILLISECONDS.toNanos(delayMillis), minDelayNanos, maxDelayNanos);
+        if (targetLatencyNanos > 0) {
+            this.delayNanos = Math.min(this.delayNanos, Math.max(targetLatencyNanos / 2, minDelayNanos));
+        }
+        this.waitBudgetNanos = this.delayNanos;
+    }
+
+    /**
+     * 发送尺寸不能超过SendBuffer的容量，否则攒不满一批，只能等定时发送
+     */
+    synchronized void limitSize(int capacity) {
+        this.maxSize = Math.min(maxSize, capacity);
+        this.minSize = Math.min(minSize, maxSize);
+        this.size = clamp(size, minSize, maxSize);
+    }
+
+    void recordAdd() {
+        arrivals.increment();
+    }
+
+    /**
+     * 记录一次处理函数调用的耗时
+     */
+    void recordConsume(long nanos) {
+        double current = consumeNanos;
+        consumeNanos = current == 0D ? nanos : current * 0.8D + nanos * 0.2D;
+    }
+
+    /**
+     * 记录一个批次中最早添加的数据从添加到处理完成的延迟
+     */
+    synchronized void recordDelivery(long nanos) {
+        latencySamples[sampleCount++ % SAMPLES] = nanos;
+    }
+
+    /**
+     * 距离上次调整超过一个窗口时重新计算尺寸和间隔
+     *
+     * @return 是否做了调整
+     */
+    synchronized boolean adjust(long now) {
+        long elapsed = now - lastAdjustNanos;
+        if (elapsed < ADJUST_INTERVAL_NANOS) {
+            return false;
+        }
+        lastAdjustNanos = now;
+        double rate = arrivals.sumThenReset() * 1e9D / elapsed;
+        arrivalRate = arrivalRate == 0D ? rate : arrivalRate * 0.5D + rate * 0.5D;
+        if (targetLatencyNanos > 0) {
+            adjustForLatency();
+        } else {
+            adjustForThroughput();
+        }
+        sampleCount = 0;
+        return true;
+    }
+
+    /**
+     * 超过目标时等待时间减半，否则线性增加，尺寸取等待时间内大约能到达的条数
+     */
+    private void adjustForLatency() {
+        if (sampleCount > 0) {
+            long p99 = percentile99();
+            if (p99 > targetLatencyNanos) {
+                waitBudgetNanos *= 0.5D;
+            } else {
+                waitBudgetNanos += targetLatencyNanos * 0.05D;
+            }
+        }
+        // 等待时间加上处理耗时不能超过目标
+        double ceiling = Math.max(targetLatencyNanos - consumeNanos, minDelayNanos);
+        waitBudgetNanos = Math.min(Math.max(waitBudgetNanos, minDelayNanos), ceiling);
+        delayNanos = clamp((long) waitBudgetNanos, minDelayNanos, maxDelayNanos);
+        size = clamp((long) Math.ceil(arrivalRate * waitBudgetNanos / 1e9D), minSize, maxSize);
+    }
+
+    /**
+     * 单批耗时乘以目标吞吐就是每批至少需要的条数，间隔取攒满一批大约需要的时间
+     */
+    private void adjustForThroughput() {
+        if (consumeNanos > 0D) {
+            size = clamp((long) Math.ceil(targetThroughput * consumeNanos / 1e9D * 1.2D), minSize, maxSize);
+        }
+        if (arrivalRate > 0D) {
+            delayNanos = clamp((long) (size / arrivalRate * 1e9D), minDelayNanos, maxDelayNanos);
+        } else {
+            delayNanos = maxDelayNanos;
+        }
+    }
+
+    private long percentile99() {
+        int count = Math.min(sampleCount, SAMPLES);
+        if (count == 0) {
+            return 0L;
+        }
+        long[] sorted = Arrays.copyOf(latencySamples, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min((int) Math.ceil(count * 0.99D) - 1, count - 1)];
+    }
+
+    private static int clamp(long value, int min, int max) {
+        return (int) Math.min(Math.max(value, min), max);
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.min(Math.max(value, min), max);
+    }
+}
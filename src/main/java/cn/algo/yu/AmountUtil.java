@@ -1,5 +1,13 @@
 package cn.algo.yu;
 
+import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
 /**
  * @Title: ConvertUpMoney
  * @Description: 将数字金额转换为大写中文金额
@@ -8,167 +16,486 @@ package cn.algo.yu;
 public class AmountUtil {
 
     // 大写数字
-    private static final String[] NUMBERS = {"零", "壹", "贰", "叁", "肆", "伍", "陆", "柒", "捌", "玖"};
-    // 整数部分的单位
-    private static final String[] IUNIT = {"元", "拾", "佰", "仟", "万", "拾", "佰", "仟", "亿", "拾", "佰", "仟", "万", "拾", "佰", "仟"};
+    private static final char[] NUMBERS = {'零', '壹', '贰', '叁', '肆', '伍', '陆', '柒', '捌', '玖'};
+    // 每四位之内的单位，个位的单位由所在的组决定
+    private static final char[] IUNIT = {'元', '拾', '佰', '仟'};
     // 小数部分的单位
-    private static final String[] DUNIT = {"角", "分", "厘"};
+    private static final char[] DUNIT = {'角', '分', '厘'};
+    // 缓存的StringBuilder超过这个容量时不再复用
+    private static final int MAX_CACHED_BUILDER = 1024;
+    // 批量转换时超过这个数量才并行，每个并行任务处理BATCH_SLICE个金额
+    private static final int PARALLEL_BATCH_THRESHOLD = 8192;
+    private static final int BATCH_SLICE = 4096;
+    // 批量转换时每次并行处理的任务数，限制同时存在的结果缓冲区
+    private static final int BATCH_WINDOW = Runtime.getRuntime().availableProcessors() * 2;
+    // 流式转换时缓冲区超过这个长度就写出
+    private static final int FLUSH_SIZE = 8192;
+    // 常见金额缓存的槽数，必须是2的幂
+    private static final int CACHE_SIZE = 1024;
 
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+    private static final ThreadLocal<Cache> CACHE = ThreadLocal.withInitial(Cache::new);
 
     /**
-     * @param str:
-     * @Author: MachineGeek
-     * @Description: 转换为中文大写金额
-     * @Date: 2020/10/9 18:43
-     * @return: java.lang.String
+     * 转换为中文大写金额，见{@link #toChinese(CharSequence)}
      */
     public static String toChinese(String str) {
-        // 判断输入的金额字符串是否符合要求
-        if (null == str || "".equals(str) || !str.matches("(-)?[\\d]*(.)?[\\d]*")) {
-            return "抱歉，请输入数字！";
-        }
+        return toChinese((CharSequence) str);
+    }
+
+    /**
+     * 转换为中文大写金额
+     * 可以带负号和千分位逗号，小数最多取三位（角、分、厘），多余的位数直接舍去；整数部分没有位数限制，
+     * 每八位多一个亿，例如10000000100000000为“壹亿亿零壹亿元”，20003000000000000为“贰亿亿零叁万亿元”。
+     *
+     * @param str 金额，例如-1,234.56
+     * @return 大写金额，例如负壹仟贰佰叁拾肆元伍角陆分；金额为0时返回零元
+     * @throws IllegalArgumentException 不是数字，或整数部分有多余的前导0
+     */
+    public static String toChinese(CharSequence str) {
+        State state = STATE.get();
+        parse(str, state);
+        StringBuilder out = state.builder();
+        render(out, state);
+        return state.result(out);
+    }
+
+    /**
+     * 转换以分为单位的金额，避免先格式化成字符串
+     *
+     * @param cents 金额，单位为分
+     * @return 大写金额，例如100返回壹元，5返回伍分
+     */
+    public static String toChinese(long cents) {
+        State state = STATE.get();
+        StringBuilder out = state.builder();
+        appendChinese(out, cents, state);
+        return state.result(out);
+    }
+
+    /**
+     * 把以分为单位的金额追加到out，不创建中间字符串
+     *
+     * @param cents 金额，单位为分
+     * @param out   输出
+     */
+    public static void appendChinese(long cents, StringBuilder out) {
+        appendChinese(out, cents, STATE.get());
+    }
 
-        if ("0".equals(str) || "0.00".equals(str) || "0.0".equals(str)) {
-            return "零元";
+    /**
+     * 批量转换，见{@link #toChinese(long[], int, int, Appendable, CharSequence, boolean)}
+     */
+    public static void toChinese(long[] cents, Appendable out, CharSequence separator) {
+        toChinese(cents, 0, cents.length, out, separator, false);
+    }
+
+    /**
+     * 批量转换以分为单位的金额，按顺序写入out，每个金额后面跟一个separator
+     * 数量较多时分段并行转换，再按顺序写出；out只在调用线程中写入。
+     *
+     * @param cents     金额数组，单位为分
+     * @param offset    起始下标
+     * @param length    数量
+     * @param out       输出，例如Writer或StringBuilder
+     * @param separator 分隔符，例如换行
+     * @param cache     是否缓存重复出现的金额，适合大量重复的固定价格
+     */
+    public static void toChinese(long[] cents, int offset, int length, Appendable out, CharSequence separator, boolean cache) {
+        checkRange(cents.length, offset, length);
+        writeBatch(offset, length, out, (builder, from, to) -> {
+            State state = STATE.get();
+            Cache values = cache ? CACHE.get() : null;
+            for (int i = from; i < to; i++) {
+                appendChinese(builder, cents[i], state, values);
+                builder.append(separator);
+            }
+        });
+    }
+
+    /**
+     * 批量转换，见{@link #toChinese(long[], int, int, Appendable, CharSequence, boolean)}
+     */
+    public static void toChinese(int[] cents, Appendable out, CharSequence separator) {
+        toChinese(cents, 0, cents.length, out, separator, false);
+    }
+
+    /**
+     * 批量转换，见{@link #toChinese(long[], int, int, Appendable, CharSequence, boolean)}
+     */
+    public static void toChinese(int[] cents, int offset, int length, Appendable out, CharSequence separator, boolean cache) {
+        checkRange(cents.length, offset, length);
+        writeBatch(offset, length, out, (builder, from, to) -> {
+            State state = STATE.get();
+            Cache values = cache ? CACHE.get() : null;
+            for (int i = from; i < to; i++) {
+                appendChinese(builder, cents[i], state, values);
+                builder.append(separator);
+            }
+        });
+    }
+
+    /**
+     * 按流的顺序转换，每个金额后面跟一个separator，适合从数据库游标等逐条读出的金额
+     *
+     * @param cents     金额，单位为分
+     * @param out       输出
+     * @param separator 分隔符
+     * @param cache     是否缓存重复出现的金额
+     */
+    public static void toChinese(LongStream cents, Appendable out, CharSequence separator, boolean cache) {
+        StringBuilder builder = new StringBuilder(FLUSH_SIZE + 256);
+        Cache values = cache ? new Cache() : null;
+        cents.forEachOrdered(value -> {
+            appendChinese(builder, value, STATE.get(), values);
+            builder.append(separator);
+            if (builder.length() >= FLUSH_SIZE) {
+                append(out, builder);
+                builder.setLength(0);
+            }
+        });
+        append(out, builder);
+    }
+
+    /**
+     * 分段写出，数量超过阈值时每BATCH_WINDOW段并行生成一次，再按顺序写入out
+     *
+     * @param offset 起始下标
+     * @param length 数量
+     * @param out    输出
+     * @param writer 把[from, to)范围内的元素写入StringBuilder
+     */
+    static void writeBatch(int offset, int length, Appendable out, RangeWriter writer) {
+        if (length < PARALLEL_BATCH_THRESHOLD) {
+            StringBuilder builder = new StringBuilder(length * 16);
+            writer.write(builder, offset, offset + length);
+            append(out, builder);
+            return;
         }
+        int end = offset + length;
+        int slices = (length + BATCH_SLICE - 1) / BATCH_SLICE;
+        StringBuilder[] builders = new StringBuilder[Math.min(slices, BATCH_WINDOW)];
+        for (int first = 0; first < slices; first += builders.length) {
+            int start = first;
+            int count = Math.min(builders.length, slices - first);
+            IntStream.range(0, count).parallel().forEach(i -> {
+                int from = offset + (start + i) * BATCH_SLICE;
+                StringBuilder builder = builders[i];
+                if (builder == null) {
+                    builder = new StringBuilder(BATCH_SLICE * 16);
+                    builders[i] = builder;
+                } else {
+                    builder.setLength(0);
+                }
+                writer.write(builder, from, Math.min(from + BATCH_SLICE, end));
+            });
+            for (int i = 0; i < count; i++) {
+                append(out, builders[i]);
+            }
+        }
+    }
 
-        // 判断金额数字中是否存在负号"-"
-        boolean flag = false;
-        if (str.startsWith("-")) {
-            // 标志位，标志此金额数字为负数
-            flag = true;
-            str = str.replaceAll("-", "");
+    private static void append(Appendable out, CharSequence text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        // 去掉金额数字中的逗号","
-        str = str.replaceAll(",", "");
-        String integerStr;//整数部分数字
-        String decimalStr;//小数部分数字
+    private static void checkRange(int size, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > size - length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + size);
+        }
+    }
 
-        // 初始化：分离整数部分和小数部分
-        if (str.indexOf(".") > 0) {
-            integerStr = str.substring(0, str.indexOf("."));
-            decimalStr = str.substring(str.indexOf(".") + 1);
-        } else if (str.indexOf(".") == 0) {
-            integerStr = "";
-            decimalStr = str.substring(1);
-        } else {
-            integerStr = str;
-            decimalStr = "";
-        }
-
-        // beyond超出计算能力，直接返回
-        if (integerStr.length() > IUNIT.length) {
-            return "超出计算能力！";
-        }
-
-        // 整数部分数字
-        int[] integers = toIntArray(integerStr);
-        // 判断整数部分是否存在输入012的情况
-        if (integers.length > 1 && integers[0] == 0) {
-            return "抱歉，输入数字不符合要求！";
-        }
-        // 设置万单位
-        boolean isWan = isWan5(integerStr);
-        // 小数部分数字
-        int[] decimals = toIntArray(decimalStr);
-        // 返回最终的大写金额
-        String result = getChineseInteger(integers, isWan) + getChineseDecimal(decimals);
-        if (flag) {
-            // 如果是负数，加上"负"
-            return "负" + result;
+    private static void appendChinese(StringBuilder out, long cents, State state, Cache cache) {
+        if (cache == null) {
+            appendChinese(out, cents, state);
+            return;
+        }
+        String cached = cache.get(cents);
+        if (cached == null) {
+            int start = out.length();
+            appendChinese(out, cents, state);
+            cache.put(cents, out.substring(start));
         } else {
-            return result;
+            out.append(cached);
+        }
+    }
+
+    private static void appendChinese(StringBuilder out, long cents, State state) {
+        boolean negative = cents < 0;
+        // Long.MIN_VALUE取反会溢出，先除再取反
+        long integer = cents / 100;
+        int fraction = (int) (cents % 100);
+        if (negative) {
+            integer = -integer;
+            fraction = -fraction;
         }
+        state.set(negative, integer, fraction, 2);
+        render(out, state);
     }
 
     /**
-     * @param number:
-     * @Author: MachineGeek
-     * @Description: 将字符串转为Int数组
-     * @Date: 2020/10/9 18:43
-     * @return: int[]
+     * 转换以元为单位的金额，小数超过三位时舍去
+     *
+     * @param amount 金额，单位为元
+     * @return 大写金额
      */
-    private static int[] toIntArray(String number) {
-        int[] array = new int[number.length()];
-        for (int i = 0; i < number.length(); i++) {
-            array[i] = Integer.parseInt(number.substring(i, i + 1));
+    public static String toChinese(BigDecimal amount) {
+        State state = STATE.get();
+        BigDecimal units = amount.setScale(DUNIT.length, RoundingMode.DOWN);
+        if (units.unscaledValue().bitLength() < Long.SIZE - 1) {
+            long value = units.unscaledValue().longValue();
+            boolean negative = value < 0;
+            value = Math.abs(value);
+            state.set(negative, value / 1000, (int) (value % 1000), DUNIT.length);
+        } else {
+            parse(units.toPlainString(), state);
         }
-        return array;
+        StringBuilder out = state.builder();
+        render(out, state);
+        return state.result(out);
     }
 
     /**
-     * @param integers:
-     * @param isWan:
-     * @Author: MachineGeek
-     * @Description: 将整数部分转为中文大写金额
-     * @Date: 2020/10/9 18:43
-     * @return: java.lang.String
+     * 扫描一遍字符串，把整数部分和最多三位小数放入state.digits
      */
-    private static String getChineseInteger(int[] integers, boolean isWan) {
-        StringBuffer chineseInteger = new StringBuffer();
-        int length = integers.length;
-        if (length == 1 && integers[0] == 0) {
-            return "";
+    private static void parse(CharSequence str, State state) {
+        if (str == null) {
+            throw new IllegalArgumentException("Amount is null");
         }
-        for (int i = 0; i < length; i++) {
-            String key = "";
-            if (integers[i] == 0) {
-                if ((length - i) == 13)//万（亿）
-                    key = IUNIT[4];
-                else if ((length - i) == 9) {//亿
-                    key = IUNIT[8];
-                } else if ((length - i) == 5 && isWan) {//万
-                    key = IUNIT[4];
-                } else if ((length - i) == 1) {//元
-                    key = IUNIT[0];
+        int length = str.length();
+        int i = 0;
+        boolean negative = length > 0 && str.charAt(0) == '-';
+        if (negative) {
+            i++;
+        }
+        state.reset(negative);
+        boolean digit = false;
+        boolean leadingZero = false;
+        for (; i < length; i++) {
+            char c = str.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (leadingZero) {
+                    throw new IllegalArgumentException("Leading zero in amount: " + str);
                 }
-                if ((length - i) > 1 && integers[i + 1] != 0) {
-                    key += NUMBERS[0];
+                if (c == '0' && state.integerLength == 0) {
+                    leadingZero = true;
+                } else {
+                    state.add(c);
+                    state.integerLength++;
                 }
+                digit = true;
+            } else if (c == ',' && digit && i + 1 < length && isDigit(str.charAt(i + 1))) {
+                // 千分位逗号只能出现在两个数字之间
+                continue;
+            } else if (c == '.') {
+                break;
+            } else {
+                throw new IllegalArgumentException("Not an amount: " + str);
             }
-            chineseInteger.append(integers[i] == 0 ? key : (NUMBERS[integers[i]] + IUNIT[length - i - 1]));
         }
-        return chineseInteger.toString();
+        // 小数部分
+        for (i++; i < length; i++) {
+            char c = str.charAt(i);
+            if (!isDigit(c)) {
+                throw new IllegalArgumentException("Not an amount: " + str);
+            }
+            if (state.fractionLength < DUNIT.length) {
+                state.add(c);
+                state.fractionLength++;
+            }
+            digit = true;
+        }
+        if (!digit) {
+            throw new IllegalArgumentException("Not an amount: " + str);
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
     /**
-     * @param decimals:
-     * @Author: MachineGeek
-     * @Description: 将小写部分转换为中文大写金额
-     * @Date: 2020/10/9 18:42
-     * @return: java.lang.String
+     * 输出大写金额
+     * 整数部分每八位为一节，第k节（从0开始）的末位后面跟k个亿，节内第五位后面跟万。
+     * 数字为0时：所在的节或四位不全为0时照样输出亿或万，个位输出元，后面一位不为0时再输出零；
+     * 十六位以内与原来单位表的结果一致。
      */
-    private static String getChineseDecimal(int[] decimals) {
-        StringBuffer chineseDecimal = new StringBuffer();
-        for (int i = 0; i < decimals.length; i++) {
-            if (i == 3) {
+    private static void render(StringBuilder out, State state) {
+        char[] digits = state.digits;
+        int integerLength = state.integerLength;
+        int end = integerLength + state.fractionLength;
+        boolean zero = true;
+        for (int i = 0; i < end; i++) {
+            if (digits[i] != '0') {
+                zero = false;
                 break;
             }
-            chineseDecimal.append(decimals[i] == 0 ? "" : (NUMBERS[decimals[i]] + DUNIT[i]));
         }
-        return chineseDecimal.toString();
+        if (zero) {
+            out.append(NUMBERS[0]).append(IUNIT[0]);
+            return;
+        }
+        if (state.negative) {
+            out.append('负');
+        }
+        for (int i = 0; i < integerLength; i++) {
+            int position = integerLength - 1 - i;
+            int number = digits[i] - '0';
+            if (number != 0) {
+                out.append(NUMBERS[number]);
+                appendUnit(out, position);
+            } else {
+                if (position == 0) {
+                    out.append(IUNIT[0]);
+                } else if (position % 8 == 0) {
+                    if (nonZeroGroup(digits, i, 8)) {
+                        appendYi(out, position);
+                    }
+                } else if (position % 8 == 4 && nonZeroGroup(digits, i, 4)) {
+                    out.append('万');
+                }
+                if (position > 0 && digits[i + 1] != '0') {
+                    out.append(NUMBERS[0]);
+                }
+            }
+        }
+        for (int i = integerLength; i < end; i++) {
+            int number = digits[i] - '0';
+            if (number != 0) {
+                out.append(NUMBERS[number]).append(DUNIT[i - integerLength]);
+            }
+        }
+    }
+
+    private static void appendUnit(StringBuilder out, int position) {
+        int unit = position % 4;
+        if (unit != 0 || position == 0) {
+            out.append(IUNIT[unit]);
+        } else if (position % 8 == 0) {
+            appendYi(out, position);
+        } else {
+            out.append('万');
+        }
     }
 
     /**
-     * @param integerStr:
-     * @Author: MachineGeek
-     * @Description: 判断数值是否到达万
-     * @Date: 2020/10/9 18:42
-     * @return: boolean
+     * 节末位的单位，第k节为k个亿
      */
-    private static boolean isWan5(String integerStr) {
-        int length = integerStr.length();
-        if (length > 4) {
-            String subInteger = "";
-            if (length > 8) {
-                subInteger = integerStr.substring(length - 8, length - 4);
-            } else {
-                subInteger = integerStr.substring(0, length - 4);
+    private static void appendYi(StringBuilder out, int position) {
+        for (int k = position / 8; k > 0; k--) {
+            out.append('亿');
+        }
+    }
+
+    /**
+     * 从index往高位数width位是否有不为0的数字，index是万位或亿位在digits中的下标
+     */
+    private static boolean nonZeroGroup(char[] digits, int index, int width) {
+        for (int i = Math.max(index - width + 1, 0); i <= index; i++) {
+            if (digits[i] != '0') {
+                return true;
             }
-            return Integer.parseInt(subInteger) > 0;
-        } else {
-            return false;
+        }
+        return false;
+    }
+
+    /**
+     * 把一段元素写入StringBuilder，用于{@link #writeBatch(int, int, Appendable, RangeWriter)}
+     */
+    @FunctionalInterface
+    interface RangeWriter {
+        void write(StringBuilder out, int from, int to);
+    }
+
+    /**
+     * 直接映射的金额缓存，冲突时覆盖旧值
+     */
+    private static final class Cache {
+        private final long[] keys = new long[CACHE_SIZE];
+        private final String[] values = new String[CACHE_SIZE];
+
+        private String get(long cents) {
+            int index = index(cents);
+            String value = values[index];
+            return value != null && keys[index] == cents ? value : null;
+        }
+
+        private void put(long cents, String value) {
+            int index = index(cents);
+            keys[index] = cents;
+            values[index] = value;
+        }
+
+        private static int index(long cents) {
+            long h = cents * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 40) & (CACHE_SIZE - 1);
+        }
+    }
+
+    /**
+     * 每个线程复用的数字缓冲区和StringBuilder
+     */
+    private static final class State {
+        // 整数部分（无前导0）后接小数部分的数字字符
+        private char[] digits = new char[32];
+        private int integerLength;
+        private int fractionLength;
+        private boolean negative;
+        private StringBuilder builder = new StringBuilder(64);
+
+        private void reset(boolean negative) {
+            this.negative = negative;
+            integerLength = 0;
+            fractionLength = 0;
+        }
+
+        private void add(char c) {
+            int index = integerLength + fractionLength;
+            if (index == digits.length) {
+                digits = Arrays.copyOf(digits, index << 1);
+            }
+            digits[index] = c;
+        }
+
+        /**
+         * 从数值填充digits
+         *
+         * @param integer        整数部分，非负
+         * @param fraction       小数部分，非负
+         * @param fractionLength 小数位数
+         */
+        private void set(boolean negative, long integer, int fraction, int fractionLength) {
+            reset(negative);
+            int length = 0;
+            for (long v = integer; v > 0; v /= 10) {
+                length++;
+            }
+            integerLength = length;
+            for (long v = integer; v > 0; v /= 10) {
+                digits[--length] = (char) ('0' + v % 10);
+            }
+            this.fractionLength = fractionLength;
+            for (int i = integerLength + fractionLength - 1; i >= integerLength; i--) {
+                digits[i] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+        }
+
+        private StringBuilder builder() {
+            builder.setLength(0);
+            return builder;
+        }
+
+        private String result(StringBuilder out) {
+            String result = out.toString();
+            if (out.capacity() > MAX_CACHED_BUILDER) {
+                builder = new StringBuilder(64);
+            }
+            return result;
         }
     }
 }
@@ -0,0 +1,897 @@
+package cn.algo.yu;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * 内存数据和流的压缩工具，可用于发送前压缩SendBuffer的批次和较大的XML报文
+ * GZIP和DEFLATE使用JDK自带的实现，Deflater和Inflater放在池中复用；
+ * LZ4（org.lz4:lz4-java）和ZSTD（com.github.luben:zstd-jni）在类路径上存在时通过反射加载，不存在时{@link Codec#isAvailable()}为false。
+ */
+public class CompressUtil {
+    // 使用各算法的默认压缩级别
+    public static final int DEFAULT_LEVEL = -1;
+    // 默认的解压后最大长度，即数组的长度上限
+    public static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+    private static final int BUFFER_SIZE = 8192;
+    // DEFLATE和LZ4的最大压缩比，输入长度乘以它就是解压后长度的上界，用来限制按长度字段预分配的缓冲区
+    private static final long DEFLATE_MAX_RATIO = 1032L;
+    private static final long LZ4_MAX_RATIO = 256L;
+    // 池中最多保留的Deflater和Inflater个数，多出的直接释放本地内存
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    // GZIP头：魔数、DEFLATE方法、无标志、无时间、无额外标志、未知系统
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final Engine[] ENGINES = {new GzipEngine(), new DeflateEngine(), Lz4Engine.load(), ZstdEngine.load()};
+
+    /**
+     * 压缩算法
+     * GZIP、DEFLATE和ZSTD的字节数组格式与流格式相同；
+     * LZ4的字节数组格式是4字节大端原始长度加一个LZ4块，适合小的批次，流格式是标准的LZ4帧，两者不能混用。
+     */
+    public enum Codec {
+        // RFC 1952，支持多个成员拼接
+        GZIP,
+        // RFC 1951，不带zlib头和校验
+        DEFLATE,
+        LZ4,
+        ZSTD;
+
+        /**
+         * @return 实现是否在类路径上
+         */
+        public boolean isAvailable() {
+            return ENGINES[ordinal()] != null;
+        }
+
+        private Engine engine() {
+            Engine engine = ENGINES[ordinal()];
+            if (engine == null) {
+                throw new UnsupportedOperationException(name() + " codec is not on the classpath");
+            }
+            return engine;
+        }
+    }
+
+    /**
+     * 使用默认级别压缩
+     */
+    public static byte[] compress(Codec codec, byte[] data) {
+        return compress(codec, data, 0, data.length, DEFAULT_LEVEL);
+    }
+
+    /**
+     * 压缩字节数组的一段
+     *
+     * @param codec  压缩算法
+     * @param data   数据
+     * @param offset 起始位置
+     * @param length 长度
+     * @param level  压缩级别，GZIP和DEFLATE为0~9，LZ4大于0时使用高压缩率模式，ZSTD为1~22，{@link #DEFAULT_LEVEL}为默认级别
+     * @return 压缩后的数据
+     */
+    public static byte[] compress(Codec codec, byte[] data, int offset, int length, int level) {
+        checkRange(data, offset, length);
+        try {
+            return codec.engine().compress(data, offset, length, level);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 压缩ByteBuffer中position到limit之间的数据，不改变其position
+     *
+     * @return 压缩后的数据，position为0
+     */
+    public static ByteBuffer compress(Codec codec, ByteBuffer data) {
+        if (data.hasArray()) {
+            return ByteBuffer.wrap(compress(codec, data.array(), data.arrayOffset() + data.position(), data.remaining(), DEFAULT_LEVEL));
+        }
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return ByteBuffer.wrap(compress(codec, copy, 0, copy.length, DEFAULT_LEVEL));
+    }
+
+    public static byte[] decompress(Codec codec, byte[] data) {
+        return decompress(codec, data, 0, data.length);
+    }
+
+    /**
+     * 解压字节数组的一段，见{@link #decompress(Codec, byte[], int, int, int)}
+     */
+    public static byte[] decompress(Codec codec, byte[] data, int offset, int length) {
+        return decompress(codec, data, offset, length, MAX_LENGTH);
+    }
+
+    /**
+     * 解压字节数组的一段
+     * 头部和尾部的长度字段由发送方决定，只作为提示：预分配的缓冲区不超过输入长度按最大压缩比算出的上界，解压时按需扩容。
+     *
+     * @param maxLength 解压后的最大长度，超过时抛出异常，用于限制来自网络的数据
+     * @return 解压后的数据
+     * @throws UncheckedIOException 数据损坏、不完整或超过maxLength时
+     */
+    public static byte[] decompress(Codec codec, byte[] data, int offset, int length, int maxLength) {
+        checkRange(data, offset, length);
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("maxLength < 0");
+        }
+        try {
+            return codec.engine().decompress(data, offset, length, Math.min(maxLength, MAX_LENGTH));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 解压ByteBuffer中position到limit之间的数据，不改变其position
+     */
+    public static ByteBuffer decompress(Codec codec, ByteBuffer data) {
+        if (data.hasArray()) {
+            return ByteBuffer.wrap(decompress(codec, data.array(), data.arrayOffset() + data.position(), data.remaining()));
+        }
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return ByteBuffer.wrap(decompress(codec, copy, 0, copy.length));
+    }
+
+    public static OutputStream compress(Codec codec, OutputStream out) {
+        return compress(codec, out, DEFAULT_LEVEL);
+    }
+
+    /**
+     * 包装为压缩输出流，关闭时写完剩余数据并关闭out，池化的Deflater在关闭时归还
+     *
+     * @param codec 压缩算法
+     * @param out   输出流
+     * @param level 压缩级别，见{@link #compress(Codec, byte[], int, int, int)}
+     * @return 压缩输出流
+     */
+    public static OutputStream compress(Codec codec, OutputStream out, int level) {
+        try {
+            return codec.engine().compress(out, level);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 包装为解压输入流，关闭时关闭in，池化的Inflater在关闭时归还
+     * GZIP会读取流开头的头部，头部不合法时抛出异常。
+     */
+    public static InputStream decompress(Codec codec, InputStream in) {
+        try {
+            return codec.engine().decompress(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void checkRange(byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > data.length - length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + data.length);
+        }
+    }
+
+    /**
+     * 从池中取出不带zlib头的Deflater
+     */
+    private static Deflater deflater(int level) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        } else {
+            deflater.setLevel(level);
+        }
+        return deflater;
+    }
+
+    private static void release(Deflater deflater) {
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private static Inflater inflater() {
+        Inflater inflater = INFLATERS.poll();
+        return inflater == null ? new Inflater(true) : inflater;
+    }
+
+    private static void release(Inflater inflater) {
+        inflater.reset();
+        if (!INFLATERS.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 原始DEFLATE数据的最大长度，与zlib的deflateBound一致并留出余量
+     */
+    private static int deflateBound(int length) {
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 64;
+    }
+
+    /**
+     * 把原始DEFLATE数据写到out的position处
+     *
+     * @return 写入后的position
+     */
+    private static int deflate(byte[] data, int offset, int length, int level, byte[][] out, int position) {
+        Deflater deflater = deflater(level == DEFAULT_LEVEL ? Deflater.DEFAULT_COMPRESSION : level);
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (position == out[0].length) {
+                    out[0] = Arrays.copyOf(out[0], out[0].length << 1);
+                }
+                position += deflater.deflate(out[0], position, out[0].length - position);
+            }
+            return position;
+        } finally {
+            release(deflater);
+        }
+    }
+
+    /**
+     * 解压一段原始DEFLATE数据到out的position处
+     *
+     * @param maxLength 写入后position的上限
+     * @param consumed  返回输入中实际消耗的字节数
+     * @return 写入后的position
+     */
+    private static int inflate(byte[] data, int offset, int length, byte[][] out, int position, int maxLength,
+        int[] consumed) throws IOException {
+        Inflater inflater = inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            while (!inflater.finished()) {
+                if (position == out[0].length) {
+                    if (position >= maxLength) {
+                        // 已经到上限，再解出一个字节就说明超长
+                        if (inflater.inflate(new byte[1]) > 0) {
+                            throw exceeds(maxLength);
+                        }
+                        if (!inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new EOFException("Unexpected end of deflate data");
+                        }
+                        continue;
+                    }
+                    out[0] = Arrays.copyOf(out[0], capacity(Math.max((long) out[0].length << 1, 64), maxLength));
+                }
+                int n = inflater.inflate(out[0], position, out[0].length - position);
+                if (n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Unexpected end of deflate data");
+                }
+                position += n;
+            }
+            consumed[0] = length - inflater.getRemaining();
+            return position;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            release(inflater);
+        }
+    }
+
+    /**
+     * 缓冲区的初始大小或扩容后的大小，不超过maxLength
+     */
+    private static int capacity(long wanted, int maxLength) {
+        return (int) Math.min(wanted, maxLength);
+    }
+
+    private static ZipException exceeds(int maxLength) {
+        return new ZipException("Decompressed data exceeds " + maxLength + " bytes");
+    }
+
+    private static int readShort(byte[] data, int index) {
+        return (data[index] & 0xff) | (data[index + 1] & 0xff) << 8;
+    }
+
+    private static long readInt(byte[] data, int index) {
+        return (readShort(data, index) | (long) readShort(data, index + 2) << 16) & 0xffffffffL;
+    }
+
+    private static int readShort(InputStream in) throws IOException {
+        int b = in.read();
+        int c = in.read();
+        if ((b | c) < 0) {
+            throw new EOFException();
+        }
+        return b | c << 8;
+    }
+
+    private static long readInt(InputStream in) throws IOException {
+        return (readShort(in) | (long) readShort(in) << 16) & 0xffffffffL;
+    }
+
+    /**
+     * 读取并校验GZIP头
+     *
+     * @return 头部的字节数
+     */
+    private static int readGzipHeader(InputStream in) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] fixed = new byte[10];
+        readFully(in, fixed, 10);
+        crc.update(fixed, 0, 10);
+        if (readShort(fixed, 0) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (fixed[2] != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = fixed[3] & 0xff;
+        int n = 10;
+        if ((flags & FEXTRA) != 0) {
+            int b = in.read();
+            int c = in.read();
+            if ((b | c) < 0) {
+                throw new EOFException();
+            }
+            crc.update(b);
+            crc.update(c);
+            int extra = b | c << 8;
+            byte[] skip = new byte[extra];
+            readFully(in, skip, extra);
+            crc.update(skip, 0, extra);
+            n += extra + 2;
+        }
+        if ((flags & FNAME) != 0) {
+            n += skipString(in, crc);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            n += skipString(in, crc);
+        }
+        if ((flags & FHCRC) != 0) {
+            if (readShort(in) != ((int) crc.getValue() & 0xffff)) {
+                throw new ZipException("Corrupt GZIP header");
+            }
+            n += 2;
+        }
+        return n;
+    }
+
+    /**
+     * 跳过以0结尾的字符串
+     */
+    private static int skipString(InputStream in, CRC32 crc) throws IOException {
+        int n = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            crc.update(b);
+            n++;
+        } while (b != 0);
+        return n;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            int read = in.read(buffer, count, length - count);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            count += read;
+        }
+    }
+
+    /**
+     * 一种压缩算法的实现
+     */
+    private interface Engine {
+        byte[] compress(byte[] data, int offset, int length, int level) throws IOException;
+
+        byte[] decompress(byte[] data, int offset, int length, int maxLength) throws IOException;
+
+        OutputStream compress(OutputStream out, int level) throws IOException;
+
+        InputStream decompress(InputStream in) throws IOException;
+    }
+
+    private static final class DeflateEngine implements Engine {
+        @Override
+        public byte[] compress(byte[] data, int offset, int length, int level) {
+            byte[][] out = {new byte[deflateBound(length)]};
+            int size = deflate(data, offset, length, level, out, 0);
+            return Arrays.copyOf(out[0], size);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int offset, int length, int maxLength) throws IOException {
+            byte[][] out = {new byte[capacity(Math.max(length * 3L, 64), maxLength)]};
+            int size = inflate(data, offset, length, out, 0, maxLength, new int[1]);
+            return size == out[0].length ? out[0] : Arrays.copyOf(out[0], size);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out, int level) {
+            return new PooledDeflaterOutputStream(out, deflater(level == DEFAULT_LEVEL ? Deflater.DEFAULT_COMPRESSION : level));
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return new PooledInflaterInputStream(in, inflater());
+        }
+    }
+
+    private static final class GzipEngine implements Engine {
+        @Override
+        public byte[] compress(byte[] data, int offset, int length, int level) {
+            byte[][] out = {new byte[deflateBound(length) + GZIP_HEADER.length + 8]};
+            System.arraycopy(GZIP_HEADER, 0, out[0], 0, GZIP_HEADER.length);
+            int size = deflate(data, offset, length, level, out, GZIP_HEADER.length);
+            if (size + 8 > out[0].length) {
+                out[0] = Arrays.copyOf(out[0], size + 8);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, offset, length);
+            writeInt(out[0], size, (int) crc.getValue());
+            writeInt(out[0], size + 4, length);
+            return Arrays.copyOf(out[0], size + 8);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int offset, int length, int maxLength) throws IOException {
+            int end = offset + length;
+            // 单个成员时尾部的ISIZE就是原始长度（模2^32），但它由发送方决定，不能超过按最大压缩比算出的上界
+            long hint = length >= 18 ? readInt(data, end - 4) : 0;
+            byte[][] out = {new byte[capacity(Math.min(Math.max(hint, 64), length * DEFLATE_MAX_RATIO), maxLength)]};
+            int size = 0;
+            int[] consumed = new int[1];
+            CRC32 crc = new CRC32();
+            int position = offset;
+            do {
+                ByteArrayInputStream header = new ByteArrayInputStream(data, position, end - position);
+                position += readGzipHeader(header);
+                int start = size;
+                size = inflate(data, position, end - position, out, size, maxLength, consumed);
+                position += consumed[0];
+                if (end - position < 8) {
+                    throw new EOFException("Unexpected end of GZIP data");
+                }
+                crc.reset();
+                crc.update(out[0], start, size - start);
+                if (readInt(data, position) != crc.getValue()) {
+                    throw new ZipException("Corrupt GZIP trailer");
+                }
+                if (readInt(data, position + 4) != ((size - start) & 0xffffffffL)) {
+                    throw new ZipException("Corrupt GZIP trailer");
+                }
+                position += 8;
+            } while (position < end);
+            return size == out[0].length ? out[0] : Arrays.copyOf(out[0], size);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out, int level) throws IOException {
+            return new GzipOutputStream(out, deflater(level == DEFAULT_LEVEL ? Deflater.DEFAULT_COMPRESSION : level));
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new GzipInputStream(in, inflater());
+        }
+
+        private static void writeInt(byte[] data, int index, int value) {
+            data[index] = (byte) value;
+            data[index + 1] = (byte) (value >>> 8);
+            data[index + 2] = (byte) (value >>> 16);
+            data[index + 3] = (byte) (value >>> 24);
+        }
+    }
+
+    /**
+     * 通过反射调用lz4-java
+     */
+    private static final class Lz4Engine implements Engine {
+        private final MethodHandle fastCompressor;
+        private final MethodHandle highCompressor;
+        private final MethodHandle maxCompressedLength;
+        private final MethodHandle compress;
+        private final MethodHandle decompress;
+        private final MethodHandle outputStream;
+        private final MethodHandle inputStream;
+        private final Object factory;
+        private final Object safeDecompressor;
+
+        private Lz4Engine() throws ReflectiveOperationException {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> factoryType = Class.forName("net.jpountz.lz4.LZ4Factory");
+            Class<?> compressorType = Class.forName("net.jpountz.lz4.LZ4Compressor");
+            // fastDecompressor信任输入中的长度，不能用于来自网络的数据
+            Class<?> decompressorType = Class.forName("net.jpountz.lz4.LZ4SafeDecompressor");
+            factory = factoryType.getMethod("fastestInstance").invoke(null);
+            fastCompressor = lookup.findVirtual(factoryType, "fastCompressor", MethodType.methodType(compressorType)).bindTo(factory);
+            highCompressor = lookup.findVirtual(factoryType, "highCompressor", MethodType.methodType(compressorType, int.class)).bindTo(factory);
+            safeDecompressor = factoryType.getMethod("safeDecompressor").invoke(factory);
+            maxCompressedLength = lookup.findVirtual(compressorType, "maxCompressedLength", MethodType.methodType(int.class, int.class));
+            compress = lookup.findVirtual(compressorType, "compress",
+                MethodType.methodType(int.class, byte[].class, int.class, int.class, byte[].class, int.class, int.class));
+            decompress = lookup.findVirtual(decompressorType, "decompress",
+                MethodType.methodType(int.class, byte[].class, int.class, int.class, byte[].class, int.class, int.class))
+                .bindTo(safeDecompressor);
+            outputStream = lookup.findConstructor(Class.forName("net.jpountz.lz4.LZ4FrameOutputStream"),
+                MethodType.methodType(void.class, OutputStream.class));
+            inputStream = lookup.findConstructor(Class.forName("net.jpountz.lz4.LZ4FrameInputStream"),
+                MethodType.methodType(void.class, InputStream.class));
+        }
+
+        private static Engine load() {
+            try {
+                return new Lz4Engine();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+
+        @Override
+        public byte[] compress(byte[] data, int offset, int length, int level) throws IOException {
+            try {
+                Object compressor = level > 0 ? highCompressor.invoke(level) : fastCompressor.invoke();
+                int bound = (int) maxCompressedLength.invoke(compressor, length);
+                byte[] out = new byte[bound + 4];
+                out[0] = (byte) (length >>> 24);
+                out[1] = (byte) (length >>> 16);
+                out[2] = (byte) (length >>> 8);
+                out[3] = (byte) length;
+                int size = (int) compress.invoke(compressor, data, offset, length, out, 4, bound);
+                return Arrays.copyOf(out, size + 4);
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int offset, int length, int maxLength) throws IOException {
+            if (length < 4) {
+                throw new EOFException("Unexpected end of LZ4 data");
+            }
+            int size = (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16 | (data[offset + 2] & 0xff) << 8 | data[offset + 3] & 0xff;
+            if (size < 0 || size > (length - 4) * LZ4_MAX_RATIO) {
+                throw new ZipException("Corrupt LZ4 data");
+            }
+            if (size > maxLength) {
+                throw exceeds(maxLength);
+            }
+            byte[] out = new byte[size];
+            int read;
+            try {
+                read = (int) decompress.invoke(data, offset + 4, length - 4, out, 0, size);
+            } catch (RuntimeException e) {
+                // LZ4Exception
+                throw new ZipException("Corrupt LZ4 data: " + e.getMessage());
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+            if (read != size) {
+                throw new ZipException("Corrupt LZ4 data");
+            }
+            return out;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out, int level) throws IOException {
+            try {
+                return (OutputStream) outputStream.invoke(out);
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            try {
+                return (InputStream) inputStream.invoke(in);
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * 通过反射调用zstd-jni
+     */
+    private static final class ZstdEngine implements Engine {
+        private static final int DEFAULT_ZSTD_LEVEL = 3;
+        private final MethodHandle compress;
+        private final MethodHandle decompress;
+        private final MethodHandle decompressedSize;
+        private final MethodHandle isError;
+        private final MethodHandle errorName;
+        private final MethodHandle outputStream;
+        private final MethodHandle inputStream;
+
+        private ZstdEngine() throws Throwable {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> zstd = Class.forName("com.github.luben.zstd.Zstd");
+            compress = lookup.findStatic(zstd, "compress", MethodType.methodType(byte[].class, byte[].class, int.class));
+            decompress = lookup.findStatic(zstd, "decompress", MethodType.methodType(byte[].class, byte[].class, int.class));
+            decompressedSize = lookup.findStatic(zstd, "decompressedSize", MethodType.methodType(long.class, byte[].class));
+            isError = lookup.findStatic(zstd, "isError", MethodType.methodType(boolean.class, long.class));
+            errorName = lookup.findStatic(zstd, "getErrorName", MethodType.methodType(String.class, long.class));
+            outputStream = lookup.findConstructor(Class.forName("com.github.luben.zstd.ZstdOutputStream"),
+                MethodType.methodType(void.class, OutputStream.class, int.class));
+            inputStream = lookup.findConstructor(Class.forName("com.github.luben.zstd.ZstdInputStream"),
+                MethodType.methodType(void.class, InputStream.class));
+            // 加载本地库
+            compress.invoke(new byte[0], DEFAULT_ZSTD_LEVEL);
+        }
+
+        private static Engine load() {
+            try {
+                return new ZstdEngine();
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+
+        @Override
+        public byte[] compress(byte[] data, int offset, int length, int level) throws IOException {
+            byte[] input = offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length);
+            try {
+                return (byte[]) compress.invoke(input, level == DEFAULT_LEVEL ? DEFAULT_ZSTD_LEVEL : level);
+            } catch (RuntimeException e) {
+                // ZstdException
+                throw new IOException(e.getMessage(), e);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int offset, int length, int maxLength) throws IOException {
+            byte[] input = offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length);
+            try {
+                long size = (long) decompressedSize.invoke(input);
+                if ((boolean) isError.invoke(size)) {
+                    size = 0;
+                }
+                if (size > maxLength) {
+                    throw exceeds(maxLength);
+                }
+                // 帧头中的原始长度由发送方决定，没有或者比输入大太多时按流解压，边解边检查长度
+                if (size <= 0 || size > length * DEFLATE_MAX_RATIO) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(capacity(Math.max(length * 3L, 64), maxLength));
+                    try (InputStream in = decompress(new ByteArrayInputStream(input))) {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            if (read > maxLength - out.size()) {
+                                throw exceeds(maxLength);
+                            }
+                            out.write(buffer, 0, read);
+                        }
+                    }
+                    return out.toByteArray();
+                }
+                return (byte[]) decompress.invoke(input, (int) size);
+            } catch (IOException | Error e) {
+                throw e;
+            } catch (RuntimeException e) {
+                // ZstdException
+                throw new ZipException("Corrupt ZSTD data: " + e.getMessage());
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out, int level) throws IOException {
+            try {
+                return (OutputStream) outputStream.invoke(out, level == DEFAULT_LEVEL ? DEFAULT_ZSTD_LEVEL : level);
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            try {
+                return (InputStream) inputStream.invoke(in);
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * 关闭时把Deflater归还到池中
+     */
+    private static class PooledDeflaterOutputStream extends DeflaterOutputStream {
+        private boolean closed;
+
+        private PooledDeflaterOutputStream(OutputStream out, Deflater deflater) {
+            super(out, deflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                finish();
+                writeTrailer();
+                out.close();
+            } finally {
+                release(def);
+            }
+        }
+
+        void writeTrailer() throws IOException {
+        }
+    }
+
+    private static final class GzipOutputStream extends PooledDeflaterOutputStream {
+        private final CRC32 crc = new CRC32();
+
+        private GzipOutputStream(OutputStream out, Deflater deflater) throws IOException {
+            super(out, deflater);
+            try {
+                out.write(GZIP_HEADER);
+            } catch (IOException e) {
+                release(deflater);
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+
+        @Override
+        void writeTrailer() throws IOException {
+            int value = (int) crc.getValue();
+            int size = (int) def.getBytesRead();
+            out.write(new byte[]{(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24),
+                (byte) size, (byte) (size >>> 8), (byte) (size >>> 16), (byte) (size >>> 24)});
+        }
+    }
+
+    /**
+     * 关闭时把Inflater归还到池中
+     */
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+        private boolean closed;
+
+        private PooledInflaterInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                in.close();
+            } finally {
+                release(inf);
+            }
+        }
+    }
+
+    /**
+     * 读取GZIP流，支持多个成员拼接，与GZIPInputStream的行为一致
+     */
+    private static final class GzipInputStream extends PooledInflaterInputStream {
+        private final CRC32 crc = new CRC32();
+        private boolean eos;
+
+        private GzipInputStream(InputStream in, Inflater inflater) throws IOException {
+            super(in, inflater);
+            try {
+                readGzipHeader(in);
+            } catch (IOException e) {
+                release(inflater);
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (!eos) {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    crc.update(b, off, n);
+                    return n;
+                }
+                if (n == 0) {
+                    return 0;
+                }
+                eos = readTrailer();
+            }
+            return -1;
+        }
+
+        /**
+         * 校验尾部，之后还有成员时读取它的头部
+         *
+         * @return 是否已到流的末尾
+         */
+        private boolean readTrailer() throws IOException {
+            InputStream rest = in;
+            int n = inf.getRemaining();
+            if (n > 0) {
+                rest = new SequenceInputStream(new ByteArrayInputStream(buf, len - n, n), new FilterInputStream(in) {
+                    @Override
+                    public void close() {
+                    }
+                });
+            }
+            if (readInt(rest) != crc.getValue() || readInt(rest) != (inf.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            if (in.available() > 0 || n > 26) {
+                int m = 8;
+                try {
+                    m += readGzipHeader(rest);
+                } catch (IOException e) {
+                    // 后面不是GZIP成员，忽略
+                    return true;
+                }
+                inf.reset();
+                crc.reset();
+                if (n > m) {
+                    inf.setInput(buf, len - n + m, n - m);
+                }
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,514 @@
+package cn.algo.yu;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * 落盘的SendBuffer
+ * 数据先经过编码追加写到内存映射的分段文件里，再按尺寸或定时从文件中读出来交给处理函数。
+ * 处理成功后才推进确认位置，确认位置之前的分段文件会被删除；处理失败的批次留在文件里，下次定时任务再发。
+ * 进程重启后从确认位置开始重放，下游长时间不可用时堆内只保留正在发送的一批数据。
+ * 写入只保证进程崩溃不丢数据，需要抵御机器掉电时调用{@link #sync()}。
+ * 每条记录是4字节的头加数据，头为数据长度加1，0代表还没写完；确认位置轮流写到两个带序号和校验和的槽里，
+ * 写到一半崩溃时用另一个槽恢复。
+ *
+ * @param <T>
+ */
+public class DurableSendBuffer<T> {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_NAME = "checkpoint";
+    // 分段剩余空间不够写下一条时的换段标记
+    private static final int ROLL_MARKER = -1;
+    // 确认位置槽：序号8字节、分段8字节、位置4字节、校验和4字节
+    private static final int CHECKPOINT_SLOT = 24;
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final Path directory;
+    private final Codec<T> codec;
+    private final int segmentSize;
+    private final int size;
+    private final long delay;
+    private final BiPredicate<List<T>, SendBuffer.Action> consumeFunction;
+    // 保护分段文件、写入位置和确认位置
+    private final ReentrantLock lock = new ReentrantLock();
+    // 同一时刻只有一个线程在发送，保证按写入顺序确认
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    // 上次sync之后写满换掉的分段，sync时要和当前分段一起刷盘
+    private final List<Segment> unsynced = new ArrayList<>();
+    private final MappedByteBuffer checkpoint;
+    private final FileChannel checkpointChannel;
+    private final ScheduledFuture<?> scheduledTask;
+    private final LongAdder failedBatchCount = new LongAdder();
+    // 处理失败后只由定时任务重发，避免下游故障期间每次添加都去读文件
+    private volatile boolean retrying;
+    private Segment writeSegment;
+    private int writePosition;
+    // 确认位置：第一条还没处理成功的数据
+    private long ackSegment;
+    private int ackPosition;
+    // 最近一次写入确认位置的序号
+    private long checkpointSequence;
+    // 确认位置之后还有多少条数据
+    private long backlog;
+
+    public DurableSendBuffer(Path directory, Codec<T> codec, int size, long delay,
+        BiPredicate<List<T>, SendBuffer.Action> consumeFunction) {
+        this(directory, codec, DEFAULT_SEGMENT_SIZE, size, delay, consumeFunction);
+    }
+
+    /**
+     * @param directory       分段文件所在目录，不存在时创建，已有数据会在启动后重放
+     * @param codec           数据的编解码
+     * @param segmentSize     单个分段文件的大小（字节）
+     * @param size            发送尺寸
+     * @param delay           定时发送的间隔（毫秒）
+     * @param consumeFunction 处理函数
+     */
+    public DurableSendBuffer(Path directory, Codec<T> codec, int segmentSize, int size, long delay,
+        BiPredicate<List<T>, SendBuffer.Action> consumeFunction) {
+        this.directory = directory;
+        this.codec = codec;
+        this.segmentSize = Math.max(segmentSize, 4096);
+        // 最小1个
+        this.size = Math.max(size, 1);
+        // 最小100毫秒
+        this.delay = Math.max(delay, 100L);
+        this.consumeFunction = consumeFunction;
+        try {
+            Files.createDirectories(directory);
+            checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_NAME), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_SLOT * 2);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // 定时器是共用的，读文件和处理放到处理线程池上执行
+        scheduledTask = SendBufferExecutors.scheduler().scheduleWithFixedDelay(
+            () -> SendBufferExecutors.flushExecutor().execute(() -> flush(SendBuffer.Action.TASK)), this.delay,
+            this.delay, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean add(T t) {
+        if (t == null) {
+            return false;
+        }
+        byte[] bytes = codec.encode(t);
+        boolean full;
+        lock.lock();
+        try {
+            append(bytes);
+            full = ++backlog >= size;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        return !full || retrying || flush(SendBuffer.Action.SEND);
+    }
+
+    public boolean addList(List<T> ts) {
+        if (ts == null || ts.isEmpty()) {
+            return false;
+        }
+        List<byte[]> encoded = new ArrayList<>(ts.size());
+        for (T t : ts) {
+            if (t != null) {
+                encoded.add(codec.encode(t));
+            }
+        }
+        boolean full;
+        lock.lock();
+        try {
+            for (byte[] bytes : encoded) {
+                append(bytes);
+            }
+            backlog += encoded.size();
+            full = backlog >= size;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        // 与SendBuffer一致，部分消费失败也按成功算
+        if (full && !retrying) {
+            flush(SendBuffer.Action.SEND);
+        }
+        return true;
+    }
+
+    /**
+     * 把确认位置之后的数据按批次交给处理函数，失败的批次保留到下次
+     *
+     * @param action 动作来源
+     * @return 处理结果，其他线程正在发送时返回true
+     */
+    private boolean flush(SendBuffer.Action action) {
+        if (action == SendBuffer.Action.DESTROY) {
+            flushLock.lock();
+        } else if (!flushLock.tryLock()) {
+            return true;
+        }
+        try {
+            while (true) {
+                Batch<T> batch = read(action == SendBuffer.Action.SEND ? size : 1);
+                if (batch == null) {
+                    return true;
+                }
+                boolean success;
+                try {
+                    success = consumeFunction.test(batch.data, action);
+                } catch (RuntimeException e) {
+                    success = false;
+                }
+                if (!success) {
+                    failedBatchCount.increment();
+                    retrying = true;
+                    return false;
+                }
+                retrying = false;
+                acknowledge(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 从确认位置读出一批数据
+     *
+     * @param threshold 至少需要的条数
+     * @return 数据，不足时返回null
+     */
+    private Batch<T> read(int threshold) {
+        List<byte[]> records = new ArrayList<>();
+        long segmentIndex;
+        int position;
+        lock.lock();
+        try {
+            if (backlog < threshold || backlog == 0) {
+                return null;
+            }
+            segmentIndex = ackSegment;
+            position = ackPosition;
+            while (records.size() < size) {
+                Segment segment = segments.get(segmentIndex);
+                if (segment == null) {
+                    break;
+                }
+                if (segment == writeSegment && position >= writePosition) {
+                    break;
+                }
+                int header = position + 4 <= segment.buffer.capacity() ? segment.buffer.getInt(position) : ROLL_MARKER;
+                if (header == ROLL_MARKER || (header == 0 && segment != writeSegment)) {
+                    segmentIndex++;
+                    position = 0;
+                    continue;
+                }
+                int length = header - 1;
+                byte[] bytes = new byte[length];
+                ByteBuffer view = segment.buffer.duplicate();
+                view.position(position + 4);
+                view.get(bytes);
+                records.add(bytes);
+                position += 4 + length;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (records.isEmpty()) {
+            return null;
+        }
+        // 解码放在锁外，不阻塞写入
+        List<T> data = new ArrayList<>(records.size());
+        for (byte[] bytes : records) {
+            data.add(codec.decode(bytes));
+        }
+        return new Batch<>(data, segmentIndex, position);
+    }
+
+    /**
+     * 推进确认位置，删除已经全部处理完的分段
+     */
+    private void acknowledge(Batch<T> batch) {
+        lock.lock();
+        try {
+            // 另一个槽里的上一次确认位置可能在恢复时用到，它所在的分段要保留
+            long previousSegment = ackSegment;
+            ackSegment = batch.segmentIndex;
+            ackPosition = batch.position;
+            backlog -= batch.data.size();
+            writeCheckpoint();
+            Map<Long, Segment> done = segments.headMap(previousSegment);
+            for (Segment segment : done.values()) {
+                segment.close();
+                try {
+                    Files.deleteIfExists(segment.path);
+                } catch (IOException e) {
+                    // 删除失败只是多占磁盘，重启时会再次清理
+                }
+            }
+            unsynced.removeAll(done.values());
+            done.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在持有锁的情况下把确认位置写到较旧的槽，另一个槽保留上一次的确认位置
+     */
+    private void writeCheckpoint() {
+        long sequence = ++checkpointSequence;
+        int offset = (int) (sequence & 1) * CHECKPOINT_SLOT;
+        checkpoint.putLong(offset, sequence);
+        checkpoint.putLong(offset + 8, ackSegment);
+        checkpoint.putInt(offset + 16, ackPosition);
+        checkpoint.putInt(offset + 20, checksum(sequence, ackSegment, ackPosition));
+    }
+
+    /**
+     * 读出序号最大且校验和正确的槽，都无效时从第一个分段开始
+     */
+    private void readCheckpoint() {
+        checkpointSequence = 0;
+        ackSegment = 0;
+        ackPosition = 0;
+        for (int offset = 0; offset < CHECKPOINT_SLOT * 2; offset += CHECKPOINT_SLOT) {
+            long sequence = checkpoint.getLong(offset);
+            long segment = checkpoint.getLong(offset + 8);
+            int position = checkpoint.getInt(offset + 16);
+            if (sequence > checkpointSequence && checkpoint.getInt(offset + 20) == checksum(sequence, segment, position)) {
+                checkpointSequence = sequence;
+                ackSegment = segment;
+                ackPosition = position;
+            }
+        }
+    }
+
+    private static int checksum(long sequence, long segment, int position) {
+        ByteBuffer bytes = ByteBuffer.allocate(20);
+        bytes.putLong(sequence).putLong(segment).putInt(position);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.array(), 0, 20);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 在持有锁的情况下追加一条记录，先写数据再写头，头为0的位置代表还没写完
+     */
+    private void append(byte[] bytes) throws IOException {
+        int required = 4 + bytes.length;
+        if (writePosition + required > writeSegment.buffer.capacity()) {
+            if (writePosition + 4 <= writeSegment.buffer.capacity()) {
+                writeSegment.buffer.putInt(writePosition, ROLL_MARKER);
+            }
+            unsynced.add(writeSegment);
+            // 超过分段大小的记录单独放在一个足够大的分段里
+            writeSegment = openSegment(writeSegment.index + 1, Math.max(segmentSize, required + 4));
+            writePosition = 0;
+        }
+        ByteBuffer view = writeSegment.buffer.duplicate();
+        view.position(writePosition + 4);
+        view.put(bytes);
+        // 头为长度加1，空记录也不会被当成没写完
+        writeSegment.buffer.putInt(writePosition, bytes.length + 1);
+        writePosition += required;
+    }
+
+    /**
+     * 打开已有的分段文件，从确认位置开始统计待发送的数据
+     */
+    private void recover() throws IOException {
+        readCheckpoint();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                long index = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                if (index < ackSegment) {
+                    Files.deleteIfExists(path);
+                } else {
+                    openSegment(index, (int) Files.size(path));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            ackPosition = 0;
+            writeSegment = openSegment(ackSegment, segmentSize);
+            writePosition = 0;
+            return;
+        }
+        if (!segments.containsKey(ackSegment)) {
+            ackSegment = segments.firstKey();
+            ackPosition = 0;
+        }
+        writeSegment = segments.lastEntry().getValue();
+        for (Segment segment : segments.tailMap(ackSegment).values()) {
+            int position = segment.index == ackSegment ? ackPosition : 0;
+            while (position + 4 <= segment.buffer.capacity()) {
+                int header = segment.buffer.getInt(position);
+                if (header <= 0) {
+                    break;
+                }
+                backlog++;
+                position += 4 + header - 1;
+            }
+            if (segment == writeSegment) {
+                writePosition = position;
+            }
+        }
+    }
+
+    private Segment openSegment(long index, int capacity) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        Segment segment = new Segment(index, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        segments.put(index, segment);
+        return segment;
+    }
+
+    /**
+     * 把写入的数据和确认位置刷到磁盘
+     * 先刷上次sync之后写过的所有分段，再刷确认位置，确认位置不会指向没落盘的数据。
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            for (Segment segment : unsynced) {
+                segment.buffer.force();
+            }
+            unsynced.clear();
+            writeSegment.buffer.force();
+            checkpoint.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void shutDown() {
+        scheduledTask.cancel(false);
+        // 处理失败的数据留在文件里，下次启动时重放
+        flush(SendBuffer.Action.DESTROY);
+        lock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                segment.close();
+            }
+            unsynced.clear();
+            checkpoint.force();
+            checkpointChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 确认位置之后还没处理成功的数据条数
+     */
+    public long getBacklog() {
+        lock.lock();
+        try {
+            return backlog;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 处理失败、留待下次重发的批次数
+     */
+    public long getFailedBatchCount() {
+        return failedBatchCount.sum();
+    }
+
+    /**
+     * 数据与字节之间的编解码
+     *
+     * @param <T>
+     */
+    public interface Codec<T> {
+        byte[] encode(T t);
+
+        T decode(byte[] bytes);
+    }
+
+    /**
+     * @return UTF-8字符串的编解码
+     */
+    public static Codec<String> stringCodec() {
+        return new Codec<String>() {
+            @Override
+            public byte[] encode(String s) {
+                return s.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(byte[] bytes) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * 一个内存映射的分段文件
+     */
+    private static final class Segment {
+        private final long index;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(long index, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 映射在回收前仍然有效，关闭失败不影响数据
+            }
+        }
+    }
+
+    /**
+     * 读出的一批数据以及它结束的位置
+     */
+    private static final class Batch<T> {
+        private final List<T> data;
+        private final long segmentIndex;
+        private final int position;
+
+        private Batch(List<T> data, long segmentIndex, int position) {
+            this.data = data;
+            this.segmentIndex = segmentIndex;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package cn.algo.yu;
+
+import java.io.Serializable;
+
+/**
+ * 128位哈希值
+ * 用两个long保存MD5或MurmurHash3的结果，作为Map的键时比32位的十六进制字符串节省内存，equals和hashCode只比较两个long。
+ * 字节顺序为大端，toString输出和HashUtil对应方法的32位小写十六进制一致。
+ */
+public final class HashKey implements Comparable<HashKey>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long high;
+    private final long low;
+
+    public HashKey(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @param bytes 16个字节，大端
+     */
+    public static HashKey of(byte[] bytes) {
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("HashKey needs 16 bytes, got " + bytes.length);
+        }
+        return of(bytes, 0);
+    }
+
+    /**
+     * @param bytes  数组
+     * @param offset 从offset开始读16个字节，大端
+     */
+    public static HashKey of(byte[] bytes, int offset) {
+        return new HashKey(getLong(bytes, offset), getLong(bytes, offset + 8));
+    }
+
+    /**
+     * 解析32位十六进制字符串，不区分大小写
+     */
+    public static HashKey parse(CharSequence hex) {
+        if (hex.length() != 32) {
+            throw new IllegalArgumentException("HashKey needs 32 hex digits, got " + hex.length());
+        }
+        return new HashKey(parseLong(hex, 0), parseLong(hex, 16));
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = new byte[16];
+        writeTo(bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * 按大端写入16个字节
+     */
+    public void writeTo(byte[] out, int offset) {
+        for (int i = 0; i < 8; i++) {
+            out[offset + i] = (byte) (high >>> (56 - (i << 3)));
+            out[offset + 8 + i] = (byte) (low >>> (56 - (i << 3)));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HashKey)) {
+            return false;
+        }
+        HashKey other = (HashKey) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        // 哈希值本身已经均匀分布，取低位即可
+        return (int) low;
+    }
+
+    /**
+     * 按无符号大端顺序比较，与十六进制字符串的字典序一致
+     */
+    @Override
+    public int compareTo(HashKey o) {
+        int result = Long.compareUnsigned(high, o.high);
+        return result != 0 ? result : Long.compareUnsigned(low, o.low);
+    }
+
+    @Override
+    public String toString() {
+        return HashUtil.toHex(high, low);
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0L;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xFFL);
+        }
+        return value;
+    }
+
+    private static long parseLong(CharSequence hex, int offset) {
+        long value = 0L;
+        for (int i = 0; i < 16; i++) {
+            int digit = Character.digit(hex.charAt(offset + i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Illegal hex digit: " + hex.charAt(offset + i));
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+}
@@ -1,16 +1,72 @@
 package cn.algo.yu;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
 
 /**
  * 哈希工具
+ * 每个线程复用自己的MessageDigest和编码缓冲区，字符串按UTF-8编码，十六进制查表输出。
  */
 public class HashUtil {
+    private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+    // 超过这个长度的编码缓冲区不在线程里保留，避免长期占用内存
+    private static final int MAX_CACHED_BYTES = 64 * 1024;
+    // 流式读取的缓冲区大小
+    private static final int STREAM_BUFFER = 64 * 1024;
+    // 超过这个大小的文件使用内存映射读取
+    private static final long MAPPED_THRESHOLD = 1024 * 1024;
+    // 每次映射的窗口大小
+    private static final long MAPPED_WINDOW = 64L * 1024 * 1024;
+    // 批量计算时超过这个数量才分片并行
+    private static final int PARALLEL_BATCH_THRESHOLD = 4096;
+    private static final int BATCH_SLICE = 1024;
+    /**
+     * 树哈希默认的分块大小
+     */
+    public static final int DEFAULT_TREE_CHUNK = 4 * 1024 * 1024;
+
+    private static final long XXH_PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long XXH_PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long XXH_PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long XXH_PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long XXH_PRIME64_5 = 0x27D4EB2F165667C5L;
+    private static final long MURMUR3_C1 = 0x87c37b91114253d5L;
+    private static final long MURMUR3_C2 = 0x4cf5ad432745937fL;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    /**
+     * 支持流式、树哈希和批量计算的摘要算法
+     */
+    public enum Algorithm {
+        MD5("MD5"),
+        SHA1("SHA-1"),
+        SHA256("SHA-256");
+
+        private final String jdkName;
+
+        Algorithm(String jdkName) {
+            this.jdkName = jdkName;
+        }
+    }
 
     public static String MD5UpperCase16(String original) {
-        String hash = MD5UpperCase32(original);
-        return hash.equals("") ? "" : hash.toUpperCase();
+        // 历史行为：返回32位大写
+        return MD5UpperCase32(original);
     }
 
     /**
@@ -19,8 +75,8 @@ public class HashUtil {
      * @return
      */
     public static String MD5LowerCase16(String original) {
-        String hash = MD5LowerCase32(original);
-        return hash == null || hash.equals("") ? "" : hash.substring(8, 24);
+        State state = STATE.get();
+        return hex(state, md5(state, original), 4, 8, HEX_LOWER);
     }
 
     /**
@@ -30,7 +86,8 @@ public class HashUtil {
      * @return
      */
     public static String MD5UpperCase32(String original) {
-        return MD5LowerCase32(original).toUpperCase();
+        State state = STATE.get();
+        return hex(state, md5(state, original), 0, 16, HEX_UPPER);
     }
 
     /**
@@ -40,39 +97,901 @@ public class HashUtil {
      * @return
      */
     public static String MD5LowerCase32(String original) {
-        String result = "";
+        State state = STATE.get();
+        return hex(state, md5(state, original), 0, 16, HEX_LOWER);
+    }
+
+    /**
+     * MD5哈希算法（32位小写）
+     *
+     * @param original 原始字节
+     * @return
+     */
+    public static String MD5LowerCase32(byte[] original) {
+        State state = STATE.get();
+        return hex(state, state.md5().digest(original), 0, 16, HEX_LOWER);
+    }
+
+    /**
+     * MD5哈希算法（32位小写），读取position到limit之间的数据，不改变position
+     *
+     * @param original 原始数据
+     * @return
+     */
+    public static String MD5LowerCase32(ByteBuffer original) {
+        State state = STATE.get();
+        return hex(state, digest(state.md5(), original), 0, 16, HEX_LOWER);
+    }
+
+    /**
+     * MD5哈希算法（32位大写）
+     *
+     * @param original 原始字节
+     * @return
+     */
+    public static String MD5UpperCase32(byte[] original) {
+        State state = STATE.get();
+        return hex(state, state.md5().digest(original), 0, 16, HEX_UPPER);
+    }
+
+    /**
+     * SHA-1哈希算法（40位小写）
+     *
+     * @param original
+     * @return
+     */
+    public static String SHA1(String original) {
+        State state = STATE.get();
+        MessageDigest digest = state.sha1();
+        int length = state.encode(original);
+        digest.update(state.input, 0, length);
+        return hex(state, digest.digest(), 0, 20, HEX_LOWER);
+    }
 
+    /**
+     * SHA-1哈希算法（40位小写）
+     *
+     * @param original 原始字节
+     * @return
+     */
+    public static String SHA1(byte[] original) {
+        State state = STATE.get();
+        return hex(state, state.sha1().digest(original), 0, 20, HEX_LOWER);
+    }
+
+    /**
+     * SHA-1哈希算法（40位小写），读取position到limit之间的数据，不改变position
+     *
+     * @param original 原始数据
+     * @return
+     */
+    public static String SHA1(ByteBuffer original) {
+        State state = STATE.get();
+        return hex(state, digest(state.sha1(), original), 0, 20, HEX_LOWER);
+    }
+
+    /**
+     * SHA-256哈希算法（64位小写）
+     *
+     * @param original
+     * @return
+     */
+    public static String SHA256(String original) {
+        State state = STATE.get();
+        MessageDigest digest = state.sha256();
+        int length = state.encode(original);
+        digest.update(state.input, 0, length);
+        return hex(state, digest.digest(), 0, 32, HEX_LOWER);
+    }
+
+    /**
+     * SHA-256哈希算法（64位小写）
+     *
+     * @param original 原始字节
+     * @return
+     */
+    public static String SHA256(byte[] original) {
+        State state = STATE.get();
+        return hex(state, state.sha256().digest(original), 0, 32, HEX_LOWER);
+    }
+
+    /**
+     * SHA-256哈希算法（64位小写），读取position到limit之间的数据，不改变position
+     *
+     * @param original 原始数据
+     * @return
+     */
+    public static String SHA256(ByteBuffer original) {
+        State state = STATE.get();
+        return hex(state, digest(state.sha256(), original), 0, 32, HEX_LOWER);
+    }
+
+    /**
+     * xxHash64非加密哈希，种子为0，适合分片、去重等不需要抗碰撞攻击的场景
+     *
+     * @param original
+     * @return 64位哈希值
+     */
+    public static long xxHash64(String original) {
+        State state = STATE.get();
+        int length = state.encode(original);
+        return xxHash64(state.input, 0, length, 0L);
+    }
+
+    /**
+     * xxHash64非加密哈希，种子为0
+     *
+     * @param original 原始字节
+     * @return 64位哈希值
+     */
+    public static long xxHash64(byte[] original) {
+        return xxHash64(original, 0, original.length, 0L);
+    }
+
+    /**
+     * xxHash64非加密哈希，种子为0，读取position到limit之间的数据，不改变position
+     *
+     * @param original 原始数据
+     * @return 64位哈希值
+     */
+    public static long xxHash64(ByteBuffer original) {
+        State state = STATE.get();
+        int length = state.copy(original);
+        return xxHash64(state.input, 0, length, 0L);
+    }
+
+    /**
+     * xxHash64非加密哈希（16位小写）
+     *
+     * @param original
+     * @return
+     */
+    public static String xxHash64Hex(String original) {
+        State state = STATE.get();
+        int length = state.encode(original);
+        long hash = xxHash64(state.input, 0, length, 0L);
+        return hex(state, hash, 0L, 8);
+    }
+
+    /**
+     * MurmurHash3 x64 128位非加密哈希（32位小写），种子为0
+     *
+     * @param original
+     * @return
+     */
+    public static String murmur3Hex128(String original) {
+        State state = STATE.get();
+        int length = state.encode(original);
+        murmur3(state.input, 0, length, 0L, state.longs);
+        return hex(state, state.longs[0], state.longs[1], 16);
+    }
+
+    /**
+     * MurmurHash3 x64 128位非加密哈希（32位小写），种子为0
+     *
+     * @param original 原始字节
+     * @return
+     */
+    public static String murmur3Hex128(byte[] original) {
+        State state = STATE.get();
+        murmur3(original, 0, original.length, 0L, state.longs);
+        return hex(state, state.longs[0], state.longs[1], 16);
+    }
+
+    /**
+     * MurmurHash3 x64 128位非加密哈希（32位小写），种子为0，读取position到limit之间的数据，不改变position
+     *
+     * @param original 原始数据
+     * @return
+     */
+    public static String murmur3Hex128(ByteBuffer original) {
+        State state = STATE.get();
+        int length = state.copy(original);
+        murmur3(state.input, 0, length, 0L, state.longs);
+        return hex(state, state.longs[0], state.longs[1], 16);
+    }
+
+    /**
+     * 计算字符串的摘要
+     *
+     * @param algorithm 算法
+     * @param original  原始字符串，按UTF-8编码
+     * @return 摘要字节
+     */
+    public static byte[] digest(Algorithm algorithm, String original) {
+        State state = STATE.get();
+        MessageDigest digest = state.digest(algorithm);
+        int length = state.encode(original);
+        digest.update(state.input, 0, length);
+        return digest.digest();
+    }
+
+    /**
+     * 计算摘要并写入调用方的数组，不分配新数组
+     *
+     * @param algorithm 算法
+     * @param original  原始字符串，按UTF-8编码
+     * @param out       输出数组
+     * @param offset    写入位置
+     * @return 写入的字节数
+     */
+    public static int digest(Algorithm algorithm, String original, byte[] out, int offset) {
+        State state = STATE.get();
+        return digest(state, algorithm, original, out, offset);
+    }
+
+    /**
+     * 计算摘要并写入调用方的缓冲区，从position开始写，写完position后移
+     *
+     * @param algorithm 算法
+     * @param original  原始字符串，按UTF-8编码
+     * @param out       输出缓冲区
+     * @return 写入的字节数
+     */
+    public static int digest(Algorithm algorithm, String original, ByteBuffer out) {
+        State state = STATE.get();
+        int length = digest(state, algorithm, original, state.out, 0);
+        out.put(state.out, 0, length);
+        return length;
+    }
+
+    /**
+     * MD5的中间64位，与MD5LowerCase16表示同一段摘要
+     *
+     * @param original
+     * @return
+     */
+    public static long md5Long(String original) {
+        State state = STATE.get();
+        digest(state, Algorithm.MD5, original, state.out, 0);
+        return getLongBE(state.out, 4);
+    }
+
+    /**
+     * MD5的128位，按大端拆成两个long
+     *
+     * @param original
+     * @return 长度为2的数组
+     */
+    public static long[] md5Longs(String original) {
+        State state = STATE.get();
+        digest(state, Algorithm.MD5, original, state.out, 0);
+        return new long[]{getLongBE(state.out, 0), getLongBE(state.out, 8)};
+    }
+
+    /**
+     * MD5的128位哈希键，toString与MD5LowerCase32一致
+     *
+     * @param original
+     * @return
+     */
+    public static HashKey md5Key(String original) {
+        State state = STATE.get();
+        digest(state, Algorithm.MD5, original, state.out, 0);
+        return HashKey.of(state.out, 0);
+    }
+
+    /**
+     * MD5的128位哈希键
+     *
+     * @param original 原始字节
+     * @return
+     */
+    public static HashKey md5Key(byte[] original) {
+        State state = STATE.get();
+        MessageDigest digest = state.md5();
+        digest.update(original);
+        finish(digest, state.out, 0);
+        return HashKey.of(state.out, 0);
+    }
+
+    /**
+     * MurmurHash3 x64 128位，种子为0
+     *
+     * @param original
+     * @return 长度为2的数组，顺序与murmur3Hex128的输出一致
+     */
+    public static long[] murmur3_128(String original) {
+        State state = STATE.get();
+        int length = state.encode(original);
+        long[] out = new long[2];
+        murmur3(state.input, 0, length, 0L, out);
+        return out;
+    }
+
+    /**
+     * MurmurHash3 x64 128位，种子为0
+     *
+     * @param original 原始字节
+     * @return 长度为2的数组，顺序与murmur3Hex128的输出一致
+     */
+    public static long[] murmur3_128(byte[] original) {
+        long[] out = new long[2];
+        murmur3(original, 0, original.length, 0L, out);
+        return out;
+    }
+
+    /**
+     * MurmurHash3 x64 128位哈希键，toString与murmur3Hex128一致
+     *
+     * @param original
+     * @return
+     */
+    public static HashKey murmur3Key(String original) {
+        State state = STATE.get();
+        int length = state.encode(original);
+        murmur3(state.input, 0, length, 0L, state.longs);
+        return new HashKey(state.longs[0], state.longs[1]);
+    }
+
+    /**
+     * MurmurHash3 x64 128位哈希键
+     *
+     * @param original 原始字节
+     * @return
+     */
+    public static HashKey murmur3Key(byte[] original) {
+        State state = STATE.get();
+        murmur3(original, 0, original.length, 0L, state.longs);
+        return new HashKey(state.longs[0], state.longs[1]);
+    }
+
+    /**
+     * 计算字符串的摘要（小写十六进制）
+     *
+     * @param algorithm 算法
+     * @param original  原始字符串，按UTF-8编码
+     * @return
+     */
+    public static String hash(Algorithm algorithm, String original) {
+        State state = STATE.get();
+        MessageDigest digest = state.digest(algorithm);
+        int length = state.encode(original);
+        digest.update(state.input, 0, length);
+        return hex(state, digest.digest(), 0, digest.getDigestLength(), HEX_LOWER);
+    }
+
+    /**
+     * 流式计算输入流的摘要（小写十六进制），读到流结束，不关闭流
+     *
+     * @param algorithm 算法
+     * @param in        输入流
+     * @return
+     */
+    public static String hash(Algorithm algorithm, InputStream in) {
+        State state = STATE.get();
+        MessageDigest digest = state.digest(algorithm);
+        byte[] buffer = state.buffer(STREAM_BUFFER);
         try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            digest.reset();
+            throw new UncheckedIOException(e);
+        }
+        return hex(state, digest.digest(), 0, digest.getDigestLength(), HEX_LOWER);
+    }
 
-            md.update(original.getBytes());
+    /**
+     * 计算文件的摘要（小写十六进制），大文件使用内存映射读取
+     *
+     * @param algorithm 算法
+     * @param path      文件路径
+     * @return
+     */
+    public static String hash(Algorithm algorithm, Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return hash(algorithm, channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 计算通道全部内容的摘要（小写十六进制），从0读到当前大小，不改变通道的position，不关闭通道
+     *
+     * @param algorithm 算法
+     * @param channel   文件通道
+     * @return
+     */
+    public static String hash(Algorithm algorithm, FileChannel channel) {
+        State state = STATE.get();
+        MessageDigest digest = state.digest(algorithm);
+        try {
+            update(state, digest, channel, 0L, channel.size());
+        } catch (IOException e) {
+            digest.reset();
+            throw new UncheckedIOException(e);
+        }
+        return hex(state, digest.digest(), 0, digest.getDigestLength(), HEX_LOWER);
+    }
+
+    /**
+     * 按默认分块大小计算文件的树哈希，见{@link #treeHash(Algorithm, FileChannel, int)}
+     */
+    public static String treeHash(Algorithm algorithm, Path path) {
+        return treeHash(algorithm, path, DEFAULT_TREE_CHUNK);
+    }
+
+    /**
+     * 计算文件的树哈希，见{@link #treeHash(Algorithm, FileChannel, int)}
+     */
+    public static String treeHash(Algorithm algorithm, Path path, int chunkSize) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return treeHash(algorithm, channel, chunkSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            byte[] b = md.digest();
+    /**
+     * 并行计算树哈希（小写十六进制）
+     * 把内容按chunkSize切块，各块在ForkJoin公共池上并行计算摘要，结果为所有块摘要依次拼接后的摘要：
+     * H(H(块0) || H(块1) || ... )，空文件视为一个空块。
+     * 结果和普通摘要不同，只能和同样算法、同样分块大小的树哈希比较。
+     *
+     * @param algorithm 算法
+     * @param channel   文件通道，不改变position，不关闭
+     * @param chunkSize 分块大小（字节）
+     * @return
+     */
+    public static String treeHash(Algorithm algorithm, FileChannel channel, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        long size;
+        try {
+            size = channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int chunks = (int) Math.max((size + chunkSize - 1) / chunkSize, 1L);
+        int digestLength = STATE.get().digest(algorithm).getDigestLength();
+        byte[] leaves = new byte[chunks * digestLength];
+        IntStream.range(0, chunks).parallel().forEach(i -> {
+            State state = STATE.get();
+            MessageDigest digest = state.digest(algorithm);
+            long position = (long) i * chunkSize;
+            try {
+                update(state, digest, channel, position, Math.min(chunkSize, size - position));
+                digest.digest(leaves, i * digestLength, digestLength);
+            } catch (IOException e) {
+                digest.reset();
+                throw new UncheckedIOException(e);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        State state = STATE.get();
+        MessageDigest digest = state.digest(algorithm);
+        return hex(state, digest.digest(leaves), 0, digestLength, HEX_LOWER);
+    }
 
-            int i;
+    /**
+     * 批量计算字符串的摘要（小写十六进制），结果与输入一一对应
+     * 数量较多时分片在ForkJoin公共池上并行计算
+     *
+     * @param algorithm 算法
+     * @param originals 原始字符串，按UTF-8编码
+     * @return
+     */
+    public static String[] hash(Algorithm algorithm, List<String> originals) {
+        List<String> list = originals instanceof RandomAccess ? originals : new ArrayList<>(originals);
+        String[] result = new String[list.size()];
+        if (result.length < PARALLEL_BATCH_THRESHOLD) {
+            hash(algorithm, list, result, 0, result.length);
+            return result;
+        }
+        int slices = (result.length + BATCH_SLICE - 1) / BATCH_SLICE;
+        IntStream.range(0, slices).parallel().forEach(slice -> {
+            int from = slice * BATCH_SLICE;
+            hash(algorithm, list, result, from, Math.min(from + BATCH_SLICE, result.length));
+        });
+        return result;
+    }
+
+    private static void hash(Algorithm algorithm, List<String> originals, String[] result, int from, int to) {
+        State state = STATE.get();
+        MessageDigest digest = state.digest(algorithm);
+        int digestLength = digest.getDigestLength();
+        for (int i = from; i < to; i++) {
+            int length = state.encode(originals.get(i));
+            digest.update(state.input, 0, length);
+            result[i] = hex(state, digest.digest(), 0, digestLength, HEX_LOWER);
+        }
+    }
 
-            StringBuffer buf = new StringBuffer();
+    /**
+     * 把通道中[position, position + length)的内容加入摘要，较大的区间使用内存映射
+     */
+    private static void update(State state, MessageDigest digest, FileChannel channel, long position, long length) throws IOException {
+        long end = position + length;
+        if (length >= MAPPED_THRESHOLD) {
+            while (position < end) {
+                long window = Math.min(MAPPED_WINDOW, end - position);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, window));
+                position += window;
+            }
+            return;
+        }
+        byte[] buffer = state.buffer(STREAM_BUFFER);
+        while (position < end) {
+            int read = channel.read(ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position)), position);
+            if (read < 0) {
+                // 读取期间文件被截断
+                break;
+            }
+            digest.update(buffer, 0, read);
+            position += read;
+        }
+    }
 
-            for (int offset = 0; offset < b.length; offset++) {
-                i = b[offset];
+    private static int digest(State state, Algorithm algorithm, String original, byte[] out, int offset) {
+        MessageDigest digest = state.digest(algorithm);
+        int length = state.encode(original);
+        digest.update(state.input, 0, length);
+        return finish(digest, out, offset);
+    }
 
-                if (i < 0)
+    private static int finish(MessageDigest digest, byte[] out, int offset) {
+        try {
+            return digest.digest(out, offset, digest.getDigestLength());
+        } catch (DigestException e) {
+            // 输出数组空间不足
+            digest.reset();
+            throw new IllegalArgumentException(e);
+        }
+    }
 
-                    i += 256;
+    /**
+     * 两个long的32位小写十六进制，给HashKey使用
+     */
+    static String toHex(long high, long low) {
+        return hex(STATE.get(), high, low, 16);
+    }
 
-                if (i < 16)
+    /**
+     * 把字符串按UTF-8编码到线程缓冲区后计算MD5
+     */
+    private static byte[] md5(State state, String original) {
+        MessageDigest digest = state.md5();
+        int length = state.encode(original);
+        digest.update(state.input, 0, length);
+        return digest.digest();
+    }
 
-                    buf.append("0");
+    private static byte[] digest(MessageDigest digest, ByteBuffer original) {
+        digest.update(original.duplicate());
+        return digest.digest();
+    }
 
-                buf.append(Integer.toHexString(i));
+    /**
+     * 查表输出十六进制
+     */
+    private static String hex(State state, byte[] bytes, int offset, int length, char[] table) {
+        char[] chars = state.chars;
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i];
+            chars[i << 1] = table[(b >>> 4) & 0xF];
+            chars[(i << 1) + 1] = table[b & 0xF];
+        }
+        return new String(chars, 0, length << 1);
+    }
 
+    /**
+     * 把一到两个long按大端顺序输出为小写十六进制
+     *
+     * @param length 字节数，8或16
+     */
+    private static String hex(State state, long high, long low, int length) {
+        char[] chars = state.chars;
+        int index = 0;
+        if (length == 16) {
+            for (int shift = 60; shift >= 0; shift -= 4) {
+                chars[index++] = HEX_LOWER[(int) (high >>> shift) & 0xF];
             }
+            high = low;
+        }
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            chars[index++] = HEX_LOWER[(int) (high >>> shift) & 0xF];
+        }
+        return new String(chars, 0, index);
+    }
 
-            result = buf.toString();
+    static long xxHash64(byte[] input, int offset, int length, long seed) {
+        int end = offset + length;
+        int index = offset;
+        long hash;
+        if (length >= 32) {
+            long v1 = seed + XXH_PRIME64_1 + XXH_PRIME64_2;
+            long v2 = seed + XXH_PRIME64_2;
+            long v3 = seed;
+            long v4 = seed - XXH_PRIME64_1;
+            int limit = end - 32;
+            do {
+                v1 = xxRound(v1, getLongLE(input, index));
+                v2 = xxRound(v2, getLongLE(input, index + 8));
+                v3 = xxRound(v3, getLongLE(input, index + 16));
+                v4 = xxRound(v4, getLongLE(input, index + 24));
+                index += 32;
+            } while (index <= limit);
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = xxMerge(hash, v1);
+            hash = xxMerge(hash, v2);
+            hash = xxMerge(hash, v3);
+            hash = xxMerge(hash, v4);
+        } else {
+            hash = seed + XXH_PRIME64_5;
+        }
+        hash += length;
+        while (index + 8 <= end) {
+            hash ^= xxRound(0L, getLongLE(input, index));
+            hash = Long.rotateLeft(hash, 27) * XXH_PRIME64_1 + XXH_PRIME64_4;
+            index += 8;
+        }
+        if (index + 4 <= end) {
+            hash ^= (getIntLE(input, index) & 0xFFFFFFFFL) * XXH_PRIME64_1;
+            hash = Long.rotateLeft(hash, 23) * XXH_PRIME64_2 + XXH_PRIME64_3;
+            index += 4;
+        }
+        while (index < end) {
+            hash ^= (input[index] & 0xFFL) * XXH_PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * XXH_PRIME64_1;
+            index++;
+        }
+        hash ^= hash >>> 33;
+        hash *= XXH_PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= XXH_PRIME64_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long xxRound(long acc, long input) {
+        acc += input * XXH_PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * XXH_PRIME64_1;
+    }
 
+    private static long xxMerge(long hash, long value) {
+        hash ^= xxRound(0L, value);
+        return hash * XXH_PRIME64_1 + XXH_PRIME64_4;
+    }
+
+    /**
+     * MurmurHash3 x64 128位，结果写入out[0]（高64位）和out[1]（低64位）
+     * 尾部的switch与参考实现一样逐级贯穿
+     */
+    @SuppressWarnings("fallthrough")
+    static void murmur3(byte[] input, int offset, int length, long seed, long[] out) {
+        long h1 = seed;
+        long h2 = seed;
+        int blocks = length >>> 4;
+        for (int i = 0; i < blocks; i++) {
+            int index = offset + (i << 4);
+            long k1 = getLongLE(input, index);
+            long k2 = getLongLE(input, index + 8);
+            k1 *= MURMUR3_C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= MURMUR3_C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            k2 *= MURMUR3_C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= MURMUR3_C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int tail = offset + (blocks << 4);
+        long k1 = 0L;
+        long k2 = 0L;
+        switch (length & 15) {
+            case 15:
+                k2 ^= (input[tail + 14] & 0xFFL) << 48;
+            case 14:
+                k2 ^= (input[tail + 13] & 0xFFL) << 40;
+            case 13:
+                k2 ^= (input[tail + 12] & 0xFFL) << 32;
+            case 12:
+                k2 ^= (input[tail + 11] & 0xFFL) << 24;
+            case 11:
+                k2 ^= (input[tail + 10] & 0xFFL) << 16;
+            case 10:
+                k2 ^= (input[tail + 9] & 0xFFL) << 8;
+            case 9:
+                k2 ^= input[tail + 8] & 0xFFL;
+                k2 *= MURMUR3_C2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= MURMUR3_C1;
+                h2 ^= k2;
+            case 8:
+                k1 ^= (input[tail + 7] & 0xFFL) << 56;
+            case 7:
+                k1 ^= (input[tail + 6] & 0xFFL) << 48;
+            case 6:
+                k1 ^= (input[tail + 5] & 0xFFL) << 40;
+            case 5:
+                k1 ^= (input[tail + 4] & 0xFFL) << 32;
+            case 4:
+                k1 ^= (input[tail + 3] & 0xFFL) << 24;
+            case 3:
+                k1 ^= (input[tail + 2] & 0xFFL) << 16;
+            case 2:
+                k1 ^= (input[tail + 1] & 0xFFL) << 8;
+            case 1:
+                k1 ^= input[tail] & 0xFFL;
+                k1 *= MURMUR3_C1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= MURMUR3_C2;
+                h1 ^= k1;
+            default:
+                break;
+        }
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        // 与参考实现的字节序输出保持一致：先h1后h2，各自按小端
+        out[0] = Long.reverseBytes(h1);
+        out[1] = Long.reverseBytes(h2);
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLongLE(byte[] bytes, int index) {
+        return (bytes[index] & 0xFFL)
+            | (bytes[index + 1] & 0xFFL) << 8
+            | (bytes[index + 2] & 0xFFL) << 16
+            | (bytes[index + 3] & 0xFFL) << 24
+            | (bytes[index + 4] & 0xFFL) << 32
+            | (bytes[index + 5] & 0xFFL) << 40
+            | (bytes[index + 6] & 0xFFL) << 48
+            | (bytes[index + 7] & 0xFFL) << 56;
+    }
+
+    private static long getLongBE(byte[] bytes, int index) {
+        return Long.reverseBytes(getLongLE(bytes, index));
+    }
+
+    private static int getIntLE(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF)
+            | (bytes[index + 1] & 0xFF) << 8
+            | (bytes[index + 2] & 0xFF) << 16
+            | (bytes[index + 3] & 0xFF) << 24;
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
         } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
+            // MD5、SHA-1、SHA-256是每个JDK都必须提供的算法
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 线程内复用的摘要对象和缓冲区
+     */
+    private static final class State {
+        private final MessageDigest[] digests = new MessageDigest[Algorithm.values().length];
+        private byte[] bytes = new byte[256];
+        // 最近一次encode或copy的结果所在的数组，通常就是bytes
+        private byte[] input;
+        private final char[] chars = new char[64];
+        private final long[] longs = new long[2];
+        // 二进制摘要的输出缓冲区
+        private final byte[] out = new byte[32];
+
+        private MessageDigest digest(Algorithm algorithm) {
+            MessageDigest digest = digests[algorithm.ordinal()];
+            if (digest == null) {
+                digest = newDigest(algorithm.jdkName);
+                digests[algorithm.ordinal()] = digest;
+            }
+            return digest;
+        }
+
+        private MessageDigest md5() {
+            return digest(Algorithm.MD5);
+        }
+
+        private MessageDigest sha1() {
+            return digest(Algorithm.SHA1);
+        }
+
+        private MessageDigest sha256() {
+            return digest(Algorithm.SHA256);
+        }
+
+        /**
+         * 确保缓冲区至少有capacity个字节，超过上限时临时分配，不保留在线程里
+         */
+        private byte[] buffer(int capacity) {
+            if (capacity <= bytes.length) {
+                return bytes;
+            }
+            byte[] buffer = new byte[Math.max(capacity, bytes.length << 1)];
+            if (buffer.length <= MAX_CACHED_BYTES) {
+                bytes = buffer;
+            }
+            return buffer;
+        }
+
+        /**
+         * 把字符串按UTF-8编码到缓冲区，不成对的代理字符编码为'?'，与String.getBytes一致
+         * 超长的字符串直接使用String.getBytes
+         *
+         * @return 编码后的字节数
+         */
+        private int encode(String s) {
+            int length = s.length();
+            if (length * 3 > MAX_CACHED_BYTES) {
+                input = s.getBytes(StandardCharsets.UTF_8);
+                return input.length;
+            }
+            byte[] out = buffer(length * 3);
+            input = out;
+            int index = 0;
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    out[index++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[index++] = (byte) (0xC0 | (c >> 6));
+                    out[index++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    int codePoint = -1;
+                    if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    }
+                    if (codePoint < 0) {
+                        out[index++] = '?';
+                    } else {
+                        out[index++] = (byte) (0xF0 | (codePoint >> 18));
+                        out[index++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                        out[index++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                        out[index++] = (byte) (0x80 | (codePoint & 0x3F));
+                    }
+                } else {
+                    out[index++] = (byte) (0xE0 | (c >> 12));
+                    out[index++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[index++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return index;
+        }
+
+        /**
+         * 把ByteBuffer中position到limit之间的数据复制到缓冲区
+         *
+         * @return 字节数
+         */
+        private int copy(ByteBuffer buffer) {
+            int length = buffer.remaining();
+            if (length > MAX_CACHED_BYTES) {
+                input = new byte[length];
+            } else {
+                input = buffer(length);
+            }
+            buffer.duplicate().get(input, 0, length);
+            return length;
         }
-        return result;
     }
 }
@@ -0,0 +1,261 @@
+package cn.algo.yu;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * 通过JMX暴露的SendBuffer指标，注册名为cn.algo.yu:type=SendBuffer,name=容器名称
+ * 名称重复时依次加上#2、#3后缀。所有使用它的容器都关闭后自动注销。
+ * 直方图按2的幂分桶，分位数是所在桶的上界。
+ */
+public class JmxSendBufferMetrics implements SendBufferListener, JmxSendBufferMetricsMBean {
+    private final String name;
+    private final LongAdder added = new LongAdder();
+    private final LongAdder sendFlushes = new LongAdder();
+    private final LongAdder taskFlushes = new LongAdder();
+    private final LongAdder destroyFlushes = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+    private final LongAdder lockTimeouts = new LongAdder();
+    private final Histogram batchSizes = new Histogram();
+    private final Histogram consumeNanos = new Histogram();
+    private final Histogram lockWaitNanos = new Histogram();
+    // 绑定的容器的队列深度，按实例区分，StripedSendBuffer的各个分片同名
+    private final Set<IntSupplier> queueDepths = Collections.newSetFromMap(new IdentityHashMap<>());
+    private ObjectName objectName;
+
+    /**
+     * @param name 注册到JMX的名称，为null时使用第一个绑定的容器名称
+     */
+    public JmxSendBufferMetrics(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public synchronized void onStart(String bufferName, IntSupplier queueDepth) {
+        queueDepths.add(queueDepth);
+        if (objectName == null) {
+            objectName = register(name == null ? bufferName : name);
+        }
+    }
+
+    @Override
+    public void onAdd(int count) {
+        added.add(count);
+    }
+
+    @Override
+    public void onLockWait(long waitNanos, boolean acquired) {
+        lockWaitNanos.record(waitNanos);
+        if (!acquired) {
+            lockTimeouts.increment();
+        }
+    }
+
+    @Override
+    public void onDrop(int count) {
+        drops.add(count);
+    }
+
+    @Override
+    public void onFlush(SendBuffer.Action action, int batchSize, long consumeNanos, boolean success) {
+        switch (action) {
+            case SEND:
+                sendFlushes.increment();
+                break;
+            case TASK:
+                taskFlushes.increment();
+                break;
+            default:
+                destroyFlushes.increment();
+                break;
+        }
+        if (!success) {
+            failedFlushes.increment();
+        }
+        batchSizes.record(batchSize);
+        this.consumeNanos.record(consumeNanos);
+    }
+
+    @Override
+    public synchronized void onShutDown(String bufferName, IntSupplier queueDepth) {
+        queueDepths.remove(queueDepth);
+        if (queueDepths.isEmpty() && objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                // 已经被注销
+            }
+            objectName = null;
+        }
+    }
+
+    private ObjectName register(String baseName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (int i = 1; ; i++) {
+            String candidate = i == 1 ? baseName : baseName + "#" + i;
+            try {
+                ObjectName objectName = ObjectName.getInstance("cn.algo.yu:type=SendBuffer,name=" + ObjectName.quote(candidate));
+                server.registerMBean(this, objectName);
+                return objectName;
+            } catch (InstanceAlreadyExistsException e) {
+                // 名称重复，换下一个后缀
+            } catch (JMException e) {
+                throw new IllegalStateException("register SendBuffer metrics failed: " + candidate, e);
+            }
+        }
+    }
+
+    @Override
+    public long getAddedCount() {
+        return added.sum();
+    }
+
+    @Override
+    public long getSendFlushCount() {
+        return sendFlushes.sum();
+    }
+
+    @Override
+    public long getTaskFlushCount() {
+        return taskFlushes.sum();
+    }
+
+    @Override
+    public long getDestroyFlushCount() {
+        return destroyFlushes.sum();
+    }
+
+    @Override
+    public long getFailedFlushCount() {
+        return failedFlushes.sum();
+    }
+
+    @Override
+    public long getDropCount() {
+        return drops.sum();
+    }
+
+    @Override
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (IntSupplier supplier : queueDepths) {
+            depth += supplier.getAsInt();
+        }
+        return depth;
+    }
+
+    @Override
+    public double getBatchSizeMean() {
+        return batchSizes.mean();
+    }
+
+    @Override
+    public long getBatchSizeP50() {
+        return batchSizes.percentile(0.5D);
+    }
+
+    @Override
+    public long getBatchSizeP99() {
+        return batchSizes.percentile(0.99D);
+    }
+
+    @Override
+    public long getBatchSizeMax() {
+        return batchSizes.max();
+    }
+
+    @Override
+    public double getConsumeLatencyMeanMillis() {
+        return consumeNanos.mean() / 1e6D;
+    }
+
+    @Override
+    public double getConsumeLatencyP99Millis() {
+        return consumeNanos.percentile(0.99D) / 1e6D;
+    }
+
+    @Override
+    public double getConsumeLatencyMaxMillis() {
+        return consumeNanos.max() / 1e6D;
+    }
+
+    @Override
+    public double getLockWaitMeanMicros() {
+        return lockWaitNanos.mean() / 1e3D;
+    }
+
+    @Override
+    public double getLockWaitP99Micros() {
+        return lockWaitNanos.percentile(0.99D) / 1e3D;
+    }
+
+    @Override
+    public long getLockTimeoutCount() {
+        return lockTimeouts.sum();
+    }
+
+    /**
+     * 按2的幂分桶的直方图，第i个桶记录[2^(i-1), 2^i)的值
+     */
+    private static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long value) {
+            if (value < 0L) {
+                value = 0L;
+            }
+            buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+            count.increment();
+            sum.add(value);
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // 重试
+            }
+        }
+
+        private double mean() {
+            long n = count.sum();
+            return n == 0L ? 0D : (double) sum.sum() / n;
+        }
+
+        private long max() {
+            return max.get();
+        }
+
+        private long percentile(double quantile) {
+            long n = count.sum();
+            if (n == 0L) {
+                return 0L;
+            }
+            long rank = (long) Math.ceil(n * quantile);
+            long seen = 0L;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) {
+                    long upper = i == 0 ? 0L : (1L << i) - 1;
+                    return Math.min(upper, max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package cn.algo.yu;
+
+/**
+ * SendBuffer指标的JMX接口
+ */
+public interface JmxSendBufferMetricsMBean {
+    long getAddedCount();
+
+    long getSendFlushCount();
+
+    long getTaskFlushCount();
+
+    long getDestroyFlushCount();
+
+    long getFailedFlushCount();
+
+    long getDropCount();
+
+    int getQueueDepth();
+
+    double getBatchSizeMean();
+
+    long getBatchSizeP50();
+
+    long getBatchSizeP99();
+
+    long getBatchSizeMax();
+
+    double getConsumeLatencyMeanMillis();
+
+    double getConsumeLatencyP99Millis();
+
+    double getConsumeLatencyMaxMillis();
+
+    double getLockWaitMeanMicros();
+
+    double getLockWaitP99Micros();
+
+    long getLockTimeoutCount();
+}
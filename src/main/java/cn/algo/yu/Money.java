@@ -0,0 +1,343 @@
+package cn.algo.yu;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 以分为单位的金额
+ * 内部只保存一个long，解析、格式化和运算都不经过BigDecimal，加减乘除溢出时抛出ArithmeticException。
+ * 需要连对象也不创建时，可以直接使用{@link #parseCents(CharSequence, RoundingMode)}和{@link #appendYuan(long, StringBuilder)}等静态方法。
+ */
+public final class Money implements Comparable<Money>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final Money ZERO = new Money(0L);
+    // 格式化一个long金额最多需要的字符数，包括负号和小数点
+    static final int FORMAT_LENGTH = 24;
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    /**
+     * @param cents 金额，单位为分
+     */
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * @param yuan 金额，单位为元
+     * @throws ArithmeticException 溢出
+     */
+    public static Money ofYuan(long yuan) {
+        return ofCents(Math.multiplyExact(yuan, 100L));
+    }
+
+    /**
+     * 从BigDecimal转换，小数超过两位时按mode舍入
+     *
+     * @param yuan 金额，单位为元
+     * @param mode 舍入方式
+     * @throws ArithmeticException 溢出，或mode为UNNECESSARY但需要舍入
+     */
+    public static Money of(BigDecimal yuan, RoundingMode mode) {
+        return ofCents(yuan.setScale(2, mode).unscaledValue().longValueExact());
+    }
+
+    /**
+     * 解析以元为单位的金额，小数超过两位时四舍五入
+     */
+    public static Money parse(CharSequence yuan) {
+        return ofCents(parseCents(yuan, RoundingMode.HALF_UP));
+    }
+
+    public static Money parse(CharSequence yuan, RoundingMode mode) {
+        return ofCents(parseCents(yuan, mode));
+    }
+
+    /**
+     * 解析以元为单位的金额为分，不创建任何对象
+     * 格式为可选的正负号、整数部分（可以带千分位逗号）、可选的小数点和小数部分，例如-1,234.5、.05、12。
+     *
+     * @param yuan 金额，单位为元
+     * @param mode 小数超过两位时的舍入方式
+     * @return 金额，单位为分
+     * @throws NumberFormatException 格式不正确或超出long的范围
+     * @throws ArithmeticException   mode为UNNECESSARY但需要舍入
+     */
+    public static long parseCents(CharSequence yuan, RoundingMode mode) {
+        int length = yuan.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (yuan.charAt(0) == '-' || yuan.charAt(0) == '+')) {
+            negative = yuan.charAt(0) == '-';
+            i++;
+        }
+        long magnitude = 0;
+        boolean digits = false;
+        // 小数点后两位计入分，之后的位数决定舍入：half为舍去部分与0.5比较的结果
+        int half = -1;
+        boolean inexact = false;
+        try {
+            for (; i < length; i++) {
+                char c = yuan.charAt(i);
+                if (isDigit(c)) {
+                    magnitude = Math.addExact(Math.multiplyExact(magnitude, 10L), c - '0');
+                    digits = true;
+                } else if (c == ',' && digits && i + 1 < length && isDigit(yuan.charAt(i + 1))) {
+                    continue;
+                } else if (c == '.') {
+                    break;
+                } else {
+                    throw new NumberFormatException("Not an amount: " + yuan);
+                }
+            }
+            magnitude = Math.multiplyExact(magnitude, 100L);
+            int scale = 0;
+            for (i++; i < length; i++) {
+                char c = yuan.charAt(i);
+                if (!isDigit(c)) {
+                    throw new NumberFormatException("Not an amount: " + yuan);
+                }
+                digits = true;
+                if (scale < 2) {
+                    magnitude = Math.addExact(magnitude, (c - '0') * (scale == 0 ? 10L : 1L));
+                } else if (scale == 2) {
+                    inexact = c != '0';
+                    half = Integer.compare(c, '5');
+                } else if (c != '0') {
+                    inexact = true;
+                    if (half == 0) {
+                        half = 1;
+                    }
+                }
+                scale++;
+            }
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + yuan);
+        }
+        if (!digits) {
+            throw new NumberFormatException("Not an amount: " + yuan);
+        }
+        if (inexact && increment(mode, negative, (magnitude & 1) != 0, half)) {
+            if (magnitude == Long.MAX_VALUE) {
+                throw new NumberFormatException("Amount out of range: " + yuan);
+            }
+            magnitude++;
+        }
+        return negative ? -magnitude : magnitude;
+    }
+
+    /**
+     * 把分格式化为元追加到out，小数末尾的0省略，与BigDecimal除以100的toString相同
+     */
+    public static void appendYuan(long cents, StringBuilder out) {
+        char[] chars = new char[FORMAT_LENGTH];
+        int start = format(cents, false, chars);
+        out.append(chars, start, FORMAT_LENGTH - start);
+    }
+
+    /**
+     * 从后往前把元写入chars
+     *
+     * @param cents 金额，单位为分
+     * @param plain 是否总是保留两位小数
+     * @param chars 长度为FORMAT_LENGTH的缓冲区
+     * @return 起始下标
+     */
+    static int format(long cents, boolean plain, char[] chars) {
+        int index = chars.length;
+        // Long.MIN_VALUE取反会溢出，先除再取反
+        long yuan = Math.abs(cents / 100);
+        int penny = Math.abs((int) (cents % 100));
+        if (plain || penny != 0) {
+            if (plain || penny % 10 != 0) {
+                chars[--index] = (char) ('0' + penny % 10);
+            }
+            chars[--index] = (char) ('0' + penny / 10);
+            chars[--index] = '.';
+        }
+        do {
+            chars[--index] = (char) ('0' + yuan % 10);
+            yuan /= 10;
+        } while (yuan > 0);
+        if (cents < 0) {
+            chars[--index] = '-';
+        }
+        return index;
+    }
+
+    /**
+     * 带舍入的整数除法
+     *
+     * @throws ArithmeticException 除数为0或Long.MIN_VALUE，结果溢出，或mode为UNNECESSARY但需要舍入
+     */
+    static long divide(long dividend, long divisor, RoundingMode mode) {
+        if (divisor == Long.MIN_VALUE) {
+            throw new ArithmeticException("Divisor out of range");
+        }
+        if (divisor == -1L && dividend == Long.MIN_VALUE) {
+            // Long.MIN_VALUE / -1 会静默溢出为Long.MIN_VALUE
+            throw new ArithmeticException("long overflow");
+        }
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+        boolean negative = (dividend ^ divisor) < 0;
+        long r = Math.abs(remainder);
+        int half = Long.compare(r, Math.abs(divisor) - r);
+        if (increment(mode, negative, (quotient & 1) != 0, half)) {
+            quotient += negative ? -1 : 1;
+        }
+        return quotient;
+    }
+
+    /**
+     * 舍去部分不为0时，绝对值是否需要加1
+     *
+     * @param negative 结果是否为负
+     * @param odd      截断后的结果是否为奇数
+     * @param half     舍去部分与0.5比较的结果
+     */
+    private static boolean increment(RoundingMode mode, boolean negative, boolean odd, int half) {
+        switch (mode) {
+            case UP:
+                return true;
+            case DOWN:
+                return false;
+            case CEILING:
+                return !negative;
+            case FLOOR:
+                return negative;
+            case HALF_UP:
+                return half >= 0;
+            case HALF_DOWN:
+                return half > 0;
+            case HALF_EVEN:
+                return half > 0 || half == 0 && odd;
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return 金额，单位为分
+     */
+    public long getCents() {
+        return cents;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money times(long factor) {
+        return ofCents(Math.multiplyExact(cents, factor));
+    }
+
+    /**
+     * 按比例计算，例如打85折为times(85, 100, RoundingMode.HALF_UP)
+     *
+     * @param numerator   分子
+     * @param denominator 分母
+     * @param mode        舍入方式
+     */
+    public Money times(long numerator, long denominator, RoundingMode mode) {
+        return ofCents(divide(Math.multiplyExact(cents, numerator), denominator, mode));
+    }
+
+    public Money divide(long divisor, RoundingMode mode) {
+        return ofCents(divide(cents, divisor, mode));
+    }
+
+    public Money negate() {
+        return ofCents(Math.negateExact(cents));
+    }
+
+    public Money abs() {
+        return cents < 0 ? negate() : this;
+    }
+
+    public int signum() {
+        return Long.signum(cents);
+    }
+
+    public boolean isZero() {
+        return cents == 0;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * @return 中文大写金额，见{@link AmountUtil#toChinese(long)}
+     */
+    public String toChinese() {
+        return AmountUtil.toChinese(cents);
+    }
+
+    /**
+     * 以元为单位追加到out，小数末尾的0省略
+     */
+    public void appendTo(StringBuilder out) {
+        appendYuan(cents, out);
+    }
+
+    /**
+     * 以元为单位追加到out，总是保留两位小数
+     */
+    public void appendPlainTo(StringBuilder out) {
+        char[] chars = new char[FORMAT_LENGTH];
+        int start = format(cents, true, chars);
+        out.append(chars, start, FORMAT_LENGTH - start);
+    }
+
+    /**
+     * @return 以元为单位的金额，总是保留两位小数，例如12.30
+     */
+    public String toPlainString() {
+        char[] chars = new char[FORMAT_LENGTH];
+        int start = format(cents, true, chars);
+        return new String(chars, start, FORMAT_LENGTH - start);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof Money && cents == ((Money) o).cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * @return 以元为单位的金额，小数末尾的0省略，例如12.3
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[FORMAT_LENGTH];
+        int start = format(cents, false, chars);
+        return new String(chars, start, FORMAT_LENGTH - start);
+    }
+}
@@ -0,0 +1,177 @@
+package cn.algo.yu;
+
+import java.io.Serializable;
+
+/**
+ * 在线统计量
+ * 用Welford算法逐个累加样本，只保存数量、均值、离差平方和与最大最小值，内存占用与样本数无关；
+ * 两个累加器可以用Chan的公式合并，适合按分片、线程或节点分别累加后再汇总。
+ * 不是线程安全的，多线程累加使用{@link StripedOnlineStatistics}。
+ */
+public class OnlineStatistics implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long count;
+    private double mean;
+    // 离差平方和，即 Σ(x - mean)²
+    private double m2;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public OnlineStatistics() {
+    }
+
+    /**
+     * 从其他节点传来的统计量恢复，用于合并
+     *
+     * @param count                  样本数量
+     * @param mean                   均值
+     * @param sumOfSquaredDeviations 离差平方和
+     * @param min                    最小值
+     * @param max                    最大值
+     */
+    public static OnlineStatistics of(long count, double mean, double sumOfSquaredDeviations, double min, double max) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count < 0");
+        }
+        OnlineStatistics statistics = new OnlineStatistics();
+        if (count > 0) {
+            statistics.count = count;
+            statistics.mean = mean;
+            statistics.m2 = sumOfSquaredDeviations;
+            statistics.min = min;
+            statistics.max = max;
+        }
+        return statistics;
+    }
+
+    /**
+     * 累加一个样本
+     */
+    public void add(double value) {
+        long n = ++count;
+        double delta = value - mean;
+        mean += delta / n;
+        m2 += delta * (value - mean);
+        if (n == 1) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+    }
+
+    /**
+     * 累加一组样本
+     */
+    public void addAll(double[] values) {
+        for (double value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * 合并另一个累加器，结果与把两边的样本累加到同一个累加器相同（浮点误差之内）
+     *
+     * @param other 另一个累加器，不会被修改
+     */
+    public void merge(OnlineStatistics other) {
+        merge(other.count, other.mean, other.m2, other.min, other.max);
+    }
+
+    void merge(long otherCount, double otherMean, double otherM2, double otherMin, double otherMax) {
+        if (otherCount == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = otherCount;
+            mean = otherMean;
+            m2 = otherM2;
+            min = otherMin;
+            max = otherMax;
+            return;
+        }
+        long n = count + otherCount;
+        double delta = otherMean - mean;
+        mean += delta * ((double) otherCount / n);
+        m2 += otherM2 + delta * delta * ((double) count * otherCount / n);
+        count = n;
+        min = Math.min(min, otherMin);
+        max = Math.max(max, otherMax);
+    }
+
+    /**
+     * 清空所有样本
+     */
+    public void reset() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+    }
+
+    /**
+     * @return 当前状态的副本
+     */
+    public OnlineStatistics copy() {
+        return of(count, mean, m2, min, max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return 均值，没有样本时为NaN
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return 样本方差，除以(n - 1)；与commons-math3一致，没有样本时为NaN，只有一个样本时为0
+     */
+    public double getVariance() {
+        if (count < 2) {
+            return count == 0 ? Double.NaN : 0D;
+        }
+        return m2 / (count - 1);
+    }
+
+    /**
+     * @return 总体方差，除以n
+     */
+    public double getPopulationVariance() {
+        return count == 0 ? Double.NaN : m2 / count;
+    }
+
+    /**
+     * @return 样本标准差
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return 离差平方和，与getCount、getMean一起传给其他节点即可合并
+     */
+    public double getSumOfSquaredDeviations() {
+        return m2;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "OnlineStatistics{count=" + count + ", mean=" + getMean() + ", variance=" + getVariance()
+            + ", min=" + min + ", max=" + max + '}';
+    }
+}
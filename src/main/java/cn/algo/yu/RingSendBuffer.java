@@ -0,0 +1,222 @@
+package cn.algo.yu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiPredicate;
+
+/**
+ * SendBuffer的无锁版本
+ * 内部是一个预分配的环形数组，多个生产者通过CAS抢占序号写入，同一时刻只有一个消费者取出数据。
+ * 发送语义和SendBuffer一致：达到尺寸时由添加的线程发送（SEND），定时任务发送剩余的数据（TASK），关闭时发送全部（DESTROY）。
+ * 适合大量线程同时写日志、埋点的场景，构造函数和SendBuffer一样，多了一个可选的环容量。
+ *
+ * @param <T>
+ */
+public class RingSendBuffer<T> {
+    // 环满时生产者最长等待时间，与SendBuffer的tryLock保持一致
+    private static final long FULL_WAIT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Object[] entries;
+    // 每个槽位已发布的序号，消费者据此判断槽位是否写完
+    private final AtomicLongArray published;
+    private final int mask;
+    // 下一个待抢占的序号
+    private final AtomicLong tail = new AtomicLong();
+    // 下一个待消费的序号
+    private final AtomicLong head = new AtomicLong();
+    // 消费者标记，保证同一时刻只有一个线程在取数据
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final long delay;
+    private final BiPredicate<List<T>, SendBuffer.Action> consumeFunction;
+    private final int size;
+    private ScheduledFuture<?> scheduledTask;
+
+    public RingSendBuffer(int size, long delay, BiPredicate<List<T>, SendBuffer.Action> consumeFunction) {
+        this(size, delay, Math.max(size, 1) * 4, consumeFunction);
+    }
+
+    /**
+     * @param size            发送尺寸
+     * @param delay           定时发送的间隔（毫秒）
+     * @param capacity        环的容量，会向上取整为2的幂，且不小于发送尺寸
+     * @param consumeFunction 处理函数
+     */
+    public RingSendBuffer(int size, long delay, int capacity, BiPredicate<List<T>, SendBuffer.Action> consumeFunction) {
+        // 最小1个
+        this.size = Math.max(size, 1);
+        // 最小100毫秒
+        this.delay = Math.max(delay, 100L);
+        this.consumeFunction = consumeFunction;
+        int ringSize = ceilingPowerOfTwo(Math.max(capacity, this.size));
+        entries = new Object[ringSize];
+        published = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            // 初始化为不可能出现的序号
+            published.set(i, -1L);
+        }
+        mask = ringSize - 1;
+        scheduledTaskStart();
+    }
+
+    public boolean add(T t) {
+        if (t == null) {
+            return false;
+        }
+        long sequence = claim();
+        if (sequence < 0) {
+            return false;
+        }
+        int index = (int) sequence & mask;
+        entries[index] = t;
+        published.lazySet(index, sequence);
+        if (sequence + 1 - head.get() >= size) {
+            return drain(size, SendBuffer.Action.SEND);
+        }
+        return true;
+    }
+
+    public boolean addList(List<T> ts) {
+        if (ts == null || ts.isEmpty()) {
+            return false;
+        }
+        // 与SendBuffer一致，部分消费失败也按成功算
+        for (T t : ts) {
+            add(t);
+        }
+        return true;
+    }
+
+    /**
+     * 抢占一个序号，环满时先尝试自己消费，否则自旋等待
+     *
+     * @return 序号，超时返回-1
+     */
+    private long claim() {
+        long deadline = 0L;
+        int spins = 0;
+        while (true) {
+            long current = tail.get();
+            if (current - head.get() < entries.length) {
+                if (tail.compareAndSet(current, current + 1)) {
+                    return current;
+                }
+                continue;
+            }
+            // 环已满，尝试帮忙消费
+            drain(size, SendBuffer.Action.SEND);
+            if (deadline == 0L) {
+                deadline = System.nanoTime() + FULL_WAIT_NANOS;
+            } else if (System.nanoTime() - deadline > 0) {
+                return -1L;
+            }
+            if (++spins < 100) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(1000L);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new RuntimeException(new InterruptedException());
+            }
+        }
+    }
+
+    /**
+     * 抢到消费者标记后取出数据进行处理，处理期间不持有标记，其他线程可以继续取数据
+     *
+     * @param threshold 至少积累多少条才处理
+     * @param action    动作来源
+     * @return 处理结果，没有抢到标记或数据不足时返回true
+     */
+    private boolean drain(int threshold, SendBuffer.Action action) {
+        boolean success = true;
+        while (draining.compareAndSet(false, true)) {
+            List<T> copy;
+            try {
+                copy = take(threshold);
+            } finally {
+                draining.set(false);
+            }
+            if (copy == null) {
+                break;
+            }
+            success &= consumeFunction.test(copy, action);
+            if (action == SendBuffer.Action.SEND) {
+                // 发送尺寸的批次每次只由一个生产者负责，剩余的留给下一个生产者或者定时任务
+                break;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * 取出已经发布的数据，最多size条
+     *
+     * @param threshold 至少需要的条数
+     * @return 数据，不足时返回null
+     */
+    @SuppressWarnings("unchecked")
+    private List<T> take(int threshold) {
+        long from = head.get();
+        long to = from;
+        long limit = from + size;
+        while (to < limit && published.get((int) to & mask) == to) {
+            to++;
+        }
+        int count = (int) (to - from);
+        if (count == 0 || count < threshold) {
+            return null;
+        }
+        List<T> copy = new ArrayList<>(count);
+        for (long sequence = from; sequence < to; sequence++) {
+            int index = (int) sequence & mask;
+            copy.add((T) entries[index]);
+            entries[index] = null;
+        }
+        head.set(to);
+        return copy;
+    }
+
+    /**
+     * 启动定时任务，定时器是共用的，处理放到处理线程池上执行
+     */
+    private void scheduledTaskStart() {
+        scheduledTask = SendBufferExecutors.scheduler().scheduleWithFixedDelay(() -> {
+            if (tail.get() != head.get()) {
+                SendBufferExecutors.flushExecutor().execute(() -> drain(1, SendBuffer.Action.TASK));
+            }
+        }, delay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutDown() {
+        scheduledTask.cancel(false);
+        // 等待已抢占序号的生产者写完，然后全部发送
+        while (head.get() < tail.get()) {
+            if (!draining.compareAndSet(false, true)) {
+                Thread.yield();
+                continue;
+            }
+            List<T> copy;
+            try {
+                copy = take(1);
+            } finally {
+                draining.set(false);
+            }
+            if (copy == null) {
+                Thread.yield();
+                continue;
+            }
+            consumeFunction.test(copy, SendBuffer.Action.DESTROY);
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+}
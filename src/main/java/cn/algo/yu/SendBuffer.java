@@ -2,47 +2,157 @@ package cn.algo.yu;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 /**
  * 这是一个容器
  * 可以按固定的速度或者最大size进行操作
  * 构造函数传入尺寸，延迟（毫秒），以及处理函数（lambda）就可以。
  * 返回值是处理的布尔值
+ * 需要限制容量或者把处理函数放到单独线程执行时，使用{@link #builder(int, long, BiPredicate)}构建。
  * @param <T>
  */
 public class SendBuffer<T> {
-    private List<T> data;
+    // 未命名容器的编号
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private final String name;
+    private final SendBufferListener listener;
+    private BatchList<T> data;
     private final ReentrantLock lock;
+    // 容量有空位时的通知
+    private final Condition notFull;
     private final ScheduledExecutorService scheduledExecutorService;
+    private ScheduledFuture<?> scheduledTask;
     private final long delay;
     private final BiPredicate<List<T>, Action> consumeFunction;
-    private final int size;
+    // 异步处理函数，与consumeFunction二选一
+    private final BiFunction<List<T>, Action, CompletableFuture<Boolean>> asyncConsumeFunction;
+    // 自适应模式下会在运行时调整
+    private volatile int size;
+    // 自适应控制器，为null时尺寸和间隔固定
+    private final AdaptiveBatchController controller;
+    // 已关闭，自适应模式下不再安排下一次定时任务
+    private volatile boolean closed;
+    // 最多容纳多少条还未处理完的数据
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    // 处理函数的执行器，为null时在调用线程执行
+    private final Executor consumeExecutor;
+    // 定时发送和重试的执行器
+    private final Executor flushExecutor;
+    // 已添加但还没处理完的数据条数，包含正在处理中的批次
+    private final AtomicInteger pending = new AtomicInteger();
+    // 交给监听器的队列深度，开始和关闭时传同一个实例
+    private final IntSupplier queueDepth = pending::get;
+    private final LongAdder overflowCount = new LongAdder();
+    private final LongAdder dropCount = new LongAdder();
+    // 在途批次的名额，为null时不限制
+    private final Semaphore inFlight;
+    // 没拿到在途名额、等待发送的批次，由释放名额的批次接着发送
+    private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder failedBatchCount = new LongAdder();
 
     public SendBuffer(int size, long delay, BiPredicate<List<T>, Action> consumeFunction) {
+        this(new Builder<>(size, delay, consumeFunction, null));
+    }
+
+    private SendBuffer(Builder<T> builder) {
         // 最小1个
-        this.size = Math.max(size, 1);
+        this.controller = builder.controller == null ? null : builder.controller.get();
+        if (controller != null) {
+            controller.init(Math.max(builder.size, 1), builder.delay);
+            this.size = controller.getSize();
+        } else {
+            this.size = Math.max(builder.size, 1);
+        }
         // 最小100毫秒
-        this.delay = Math.max(delay, 100L);
+        this.delay = Math.max(builder.delay, 100L);
         // 到达尺寸和时间后的处理方法
-        this.consumeFunction = consumeFunction;
-        data = new ArrayList<>(size);
+        this.consumeFunction = builder.consumeFunction;
+        this.asyncConsumeFunction = builder.asyncConsumeFunction;
+        this.capacity = Math.max(builder.capacity, this.size);
+        if (controller != null) {
+            controller.limitSize(capacity);
+        }
+        this.overflowPolicy = builder.overflowPolicy;
+        this.blockTimeoutNanos = builder.blockTimeoutNanos;
+        this.consumeExecutor = builder.consumeExecutor;
+        this.flushExecutor = builder.flushExecutor == null ? SendBufferExecutors.flushExecutor() : builder.flushExecutor;
+        this.inFlight = builder.maxInFlight == Integer.MAX_VALUE ? null : new Semaphore(Math.max(builder.maxInFlight, 1));
+        this.maxRetries = Math.max(builder.maxRetries, 0);
+        this.initialBackoffMillis = Math.max(builder.initialBackoffMillis, 1L);
+        this.maxBackoffMillis = Math.max(builder.maxBackoffMillis, this.initialBackoffMillis);
+        data = new BatchList<>(this.size);
         lock = new ReentrantLock();
-        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        notFull = lock.newCondition();
+        // 默认所有容器共用一个定时器
+        scheduledExecutorService = builder.scheduler == null ? SendBufferExecutors.scheduler() : builder.scheduler;
+        this.name = builder.name == null ? "SendBuffer-" + SEQUENCE.incrementAndGet() : builder.name;
+        this.listener = builder.listener == null ? new JmxSendBufferMetrics(null) : builder.listener;
+        listener.onStart(name, queueDepth);
         scheduledTaskStart();
     }
 
+    /**
+     * 构建一个可以配置容量、溢出策略和处理线程的容器
+     *
+     * @param size            发送尺寸
+     * @param delay           定时发送的间隔（毫秒）
+     * @param consumeFunction 处理函数
+     * @return 构建器
+     */
+    public static <T> Builder<T> builder(int size, long delay, BiPredicate<List<T>, Action> consumeFunction) {
+        return new Builder<>(size, delay, consumeFunction, null);
+    }
+
+    /**
+     * 构建一个使用异步处理函数的容器，处理函数返回的future完成前批次一直算作在途
+     * 配合{@link Builder#maxInFlight(int)}可以在发送上一批的同时填充下一批
+     *
+     * @param size                 发送尺寸
+     * @param delay                定时发送的间隔（毫秒）
+     * @param asyncConsumeFunction 异步处理函数，future结果为false或异常时按失败处理
+     * @return 构建器
+     */
+    public static <T> Builder<T> asyncBuilder(int size, long delay,
+        BiFunction<List<T>, Action, CompletableFuture<Boolean>> asyncConsumeFunction) {
+        return new Builder<>(size, delay, null, asyncConsumeFunction);
+    }
+
     public boolean add(T t) {
         if (t == null) {
             return false;
         }
+        List<T> copy = null;
         try {
-            if (lock.tryLock(10, TimeUnit.SECONDS)) {
-                return addAndCompute(t);
+            if (tryLock(10, TimeUnit.SECONDS)) {
+                if (!reserve()) {
+                    return overflow(t);
+                }
+                copy = addAndCompute(t);
+            } else {
+                return false;
             }
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
@@ -51,24 +161,28 @@ public class SendBuffer<T> {
                 lock.unlock();
             }
         }
-        return false;
+        return copy == null || dispatch(copy, Action.SEND, false);
     }
 
     /**
-     * 添加到容器里，若达到发送尺寸则调用发送函数进行发送
+     * 添加到容器里，若达到发送尺寸则取出数据交给调用方发送
      *
      * @param t
-     * @return 处理结果
+     * @return 需要发送的数据，未达到尺寸时为null
      */
-    private boolean addAndCompute(T t) {
+    private List<T> addAndCompute(T t) {
+        if (controller != null) {
+            if (data.count() == 0) {
+                data.openedNanos = System.nanoTime();
+            }
+            controller.recordAdd();
+        }
         data.add(t);
-        boolean success = true;
-        if (data.size() >= size) {
-            List<T> copy = copyAndClean();
-            lock.unlock();
-            success = consumeFunction.test(copy, Action.SEND);
+        listener.onAdd(1);
+        if (data.count() >= size) {
+            return copyAndClean();
         }
-        return success;
+        return null;
     }
 
     /**
@@ -77,8 +191,8 @@ public class SendBuffer<T> {
      * @return
      */
     private List<T> copyAndClean() {
-        List<T> copy = data;
-        data = new ArrayList<>(size);
+        List<T> copy = data.compact();
+        data = new BatchList<>(size);
         return copy;
     }
 
@@ -86,19 +200,32 @@ public class SendBuffer<T> {
         if (ts == null || ts.isEmpty()) {
             return false;
         }
+        List<List<T>> copies = new ArrayList<>();
         try {
-            if (lock.tryLock(1000, TimeUnit.MINUTES)) {
+            if (tryLock(1000, TimeUnit.MINUTES)) {
                 // 以遍历的方式添加
                 for (T t : ts) {
-                    /*
-                     * 分成了多次消费，这里比较难处理
-                     * 其中如果有包含消费失败的，整体该算成功还是失败，还得根据具体场景来看。
-                     * 考虑到使用这个容器的多是日志、埋点，丢失部分也没有关系。
-                     * 这里不先做复杂，不抛异常先按成功算。
-                     */
-                    addAndCompute(t);
+                    if (t == null) {
+                        continue;
+                    }
+                    if (!reserve()) {
+                        // 溢出时先把已经凑够的批次发出去，再按单条添加的方式处理溢出
+                        lock.unlock();
+                        dispatchAll(copies);
+                        copies.clear();
+                        add(t);
+                        if (!tryLock(1000, TimeUnit.MINUTES)) {
+                            return false;
+                        }
+                        continue;
+                    }
+                    List<T> copy = addAndCompute(t);
+                    if (copy != null) {
+                        copies.add(copy);
+                    }
                 }
-                return true;
+            } else {
+                return false;
             }
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
@@ -107,46 +234,413 @@ public class SendBuffer<T> {
                 lock.unlock();
             }
         }
-        return false;
+        /*
+         * 分成了多次消费，这里比较难处理
+         * 其中如果有包含消费失败的，整体该算成功还是失败，还得根据具体场景来看。
+         * 考虑到使用这个容器的多是日志、埋点，丢失部分也没有关系。
+         * 这里不先做复杂，不抛异常先按成功算。
+         */
+        dispatchAll(copies);
+        return true;
     }
 
     /**
-     * 启动定时任务
+     * 获取锁并记录等待时间
      */
-    private void scheduledTaskStart() {
-        scheduledExecutorService.scheduleWithFixedDelay(() -> {
-            try {
-                if (lock.tryLock(10, TimeUnit.SECONDS) && !data.isEmpty()) {
-                    List<T> copy = copyAndClean();
+    private boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        boolean acquired = lock.tryLock(timeout, unit);
+        listener.onLockWait(System.nanoTime() - start, acquired);
+        return acquired;
+    }
+
+    private void drop() {
+        dropCount.increment();
+        listener.onDrop(1);
+    }
+
+    /**
+     * 在持有锁的情况下占用一个容量
+     *
+     * @return 是否还有空位
+     */
+    private boolean reserve() {
+        if (pending.get() >= capacity) {
+            return false;
+        }
+        pending.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 容量已满时按溢出策略处理，调用时持有锁，返回前可能释放锁
+     *
+     * @param t 新加入的数据
+     * @return 处理结果
+     */
+    private boolean overflow(T t) {
+        overflowCount.increment();
+        switch (overflowPolicy) {
+            case BLOCK:
+                long nanos = blockTimeoutNanos;
+                try {
+                    while (pending.get() >= capacity) {
+                        if (nanos <= 0L) {
+                            drop();
+                            return false;
+                        }
+                        nanos = notFull.awaitNanos(nanos);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                pending.incrementAndGet();
+                List<T> copy = addAndCompute(t);
+                if (copy != null) {
                     lock.unlock();
-                    consumeFunction.test(copy, Action.TASK);
+                    return dispatch(copy, Action.SEND, false);
                 }
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+                return true;
+            case DROP_OLDEST:
+                if (data.count() > 0) {
+                    // 最老的还在容器里的数据，已经交给处理函数的批次无法撤回
+                    data.dropOldest();
+                    drop();
+                    data.add(t);
+                    listener.onAdd(1);
+                    return true;
+                }
+                drop();
+                return false;
+            case CALLER_RUNS:
+                // 连同容器里的数据一起在调用线程处理掉
+                List<T> spill = copyAndClean();
+                spill.add(t);
+                listener.onAdd(1);
+                pending.incrementAndGet();
+                lock.unlock();
+                return dispatch(spill, Action.SEND, true);
+            case DROP_NEWEST:
+            default:
+                drop();
+                return false;
+        }
+    }
+
+    private void dispatchAll(List<List<T>> copies) {
+        for (List<T> copy : copies) {
+            dispatch(copy, Action.SEND, false);
+        }
+    }
+
+    /**
+     * 把批次交给处理函数，在途批次达到上限时等待
+     * 定时发送和共用线程上的发送不在这里等待：线程都停在名额上时，占着名额等待重试的批次就没有线程可用，
+     * 名额永远不会释放；共用线程池上还会拖住其他容器。这时批次进入等待队列，由释放名额的批次接着发送。
+     *
+     * @param copy   数据
+     * @param action 动作来源
+     * @param inline 是否在调用线程处理并等待结果
+     * @return 处理结果，异步处理时只表示已经提交
+     */
+    private boolean dispatch(List<T> copy, Action action, boolean inline) {
+        if (inFlight != null) {
+            if (!inline && (action == Action.TASK || SendBufferExecutors.isExecutorThread())) {
+                if (!inFlight.tryAcquire()) {
+                    waiting.add(() -> attempt(copy, action, 0, false, new CompletableFuture<>()));
+                    // 入队前名额可能刚好释放，再检查一次
+                    drainWaiting();
+                    return true;
+                }
+            } else {
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    release(copy.size());
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        attempt(copy, action, 0, inline, result);
+        if (inline) {
+            return result.join();
+        }
+        // 同步处理函数在这里已经有结果了，异步的按提交成功算
+        return result.getNow(true);
+    }
+
+    /**
+     * 处理一次批次，失败时按指数退避重试，全部失败后计入失败批次
+     */
+    private void attempt(List<T> copy, Action action, int attempt, boolean inline, CompletableFuture<Boolean> result) {
+        CompletableFuture<Boolean> future;
+        long start = System.nanoTime();
+        try {
+            future = invoke(copy, action, inline);
+        } catch (Throwable e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((success, error) -> {
+            long elapsed = System.nanoTime() - start;
+            if (controller != null) {
+                controller.recordConsume(elapsed);
+            }
+            listener.onFlush(action, copy.size(), elapsed, error == null && Boolean.TRUE.equals(success));
+            if (error == null && Boolean.TRUE.equals(success)) {
+                finish(copy, result, true);
+                return;
+            }
+            if (attempt < maxRetries) {
+                retryCount.increment();
+                try {
+                    // 定时器只负责等待，重试放到处理函数的执行器上执行
+                    scheduledExecutorService.schedule(() -> retry(copy, action, attempt + 1, inline, result),
+                        backoffMillis(attempt), TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // 已经关闭，不再重试
+                }
+            }
+            failedBatchCount.increment();
+            finish(copy, result, false);
+        });
+    }
+
+    /**
+     * 在定时器上执行，把重试交给执行器；执行器拒绝时放弃这个批次，释放名额
+     */
+    private void retry(List<T> copy, Action action, int attempt, boolean inline, CompletableFuture<Boolean> result) {
+        try {
+            retryExecutor().execute(() -> attempt(copy, action, attempt, inline, result));
+        } catch (RejectedExecutionException e) {
+            failedBatchCount.increment();
+            finish(copy, result, false);
+        }
+    }
+
+    /**
+     * @return 重试和等待队列中的批次的执行器，与第一次处理时相同
+     */
+    private Executor retryExecutor() {
+        return consumeExecutor != null ? consumeExecutor : flushExecutor;
+    }
+
+    /**
+     * 有空闲名额时发送等待队列中的批次
+     */
+    private void drainWaiting() {
+        while (!waiting.isEmpty() && inFlight.tryAcquire()) {
+            Runnable task = waiting.poll();
+            if (task == null) {
+                // 被其他线程取走了
+                inFlight.release();
+                continue;
+            }
+            try {
+                retryExecutor().execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * 调用处理函数，配置了执行器时放到执行器上执行
+     */
+    private CompletableFuture<Boolean> invoke(List<T> copy, Action action, boolean inline) {
+        if (asyncConsumeFunction != null) {
+            CompletableFuture<Boolean> future = asyncConsumeFunction.apply(copy, action);
+            return future == null ? CompletableFuture.completedFuture(false) : future;
+        }
+        if (!inline && consumeExecutor != null) {
+            try {
+                return CompletableFuture.supplyAsync(() -> consumeFunction.test(copy, action), consumeExecutor);
+            } catch (RejectedExecutionException e) {
+                // 执行器拒绝时退回到调用线程处理
+            }
+        }
+        return CompletableFuture.completedFuture(consumeFunction.test(copy, action));
+    }
+
+    private long backoffMillis(int attempt) {
+        long backoff = initialBackoffMillis << Math.min(attempt, 30);
+        return backoff <= 0L || backoff > maxBackoffMillis ? maxBackoffMillis : backoff;
+    }
+
+    /**
+     * 批次处理结束，释放在途名额和占用的容量
+     */
+    private void finish(List<T> copy, CompletableFuture<Boolean> result, boolean success) {
+        if (inFlight != null) {
+            inFlight.release();
+            drainWaiting();
+        }
+        if (success && controller != null && copy instanceof BatchList) {
+            controller.recordDelivery(System.nanoTime() - ((BatchList<T>) copy).openedNanos);
+        }
+        release(copy.size());
+        result.complete(success);
+    }
+
+    private void release(int count) {
+        pending.addAndGet(-count);
+        if (capacity != Integer.MAX_VALUE && overflowPolicy == OverflowPolicy.BLOCK) {
+            lock.lock();
+            try {
+                notFull.signalAll();
             } finally {
-                if (lock.isHeldByCurrentThread()) {
-                    lock.unlock();
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 启动定时任务
+     */
+    private void scheduledTaskStart() {
+        if (controller != null) {
+            scheduleNext();
+            return;
+        }
+        scheduledTask = scheduledExecutorService.scheduleWithFixedDelay(this::flushTask, delay, delay,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 自适应模式下间隔会变化，每次执行完按当前间隔安排下一次
+     */
+    private void scheduleNext() {
+        if (closed) {
+            return;
+        }
+        try {
+            scheduledTask = scheduledExecutorService.schedule(() -> {
+                try {
+                    flushTask();
+                    if (controller.adjust(System.nanoTime())) {
+                        size = controller.getSize();
+                    }
+                } finally {
+                    scheduleNext();
                 }
+            }, controller.getDelayNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // 定时器已经关闭
+        }
+    }
+
+    /**
+     * 定时任务，定时器是共用的，这里只把发送交给处理线程池，避免一个容器拖慢其他容器
+     */
+    private void flushTask() {
+        if (pending.get() == 0) {
+            return;
+        }
+        try {
+            flushExecutor.execute(this::flushRemaining);
+        } catch (RejectedExecutionException e) {
+            flushRemaining();
+        }
+    }
+
+    /**
+     * 发送容器里剩余的数据，锁被占用时跳过这一次
+     */
+    private void flushRemaining() {
+        List<T> copy = null;
+        try {
+            if (tryLock(0L, TimeUnit.MILLISECONDS) && data.count() > 0) {
+                copy = copyAndClean();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
             }
-        }, delay, delay, TimeUnit.MILLISECONDS);
+        }
+        if (copy != null) {
+            dispatch(copy, Action.TASK, false);
+        }
     }
 
+    /**
+     * 关闭容器，最后一批在调用线程处理，处理函数执行期间不持有锁
+     */
     public void shutDown() {
+        List<T> copy = null;
+        closed = true;
         try {
             lock.lock();
-            if (scheduledExecutorService != null && !scheduledExecutorService.isShutdown()) {
-                scheduledExecutorService.shutdown();
+            if (scheduledTask != null) {
+                scheduledTask.cancel(false);
             }
-            if (data.isEmpty()) {
-                return;
+            if (data.count() > 0) {
+                copy = copyAndClean();
             }
-            List<T> copy = copyAndClean();
-            consumeFunction.test(copy, Action.DESTROY);
         } finally {
             if (lock.isHeldByCurrentThread()) {
                 lock.unlock();
             }
         }
+        // 最后一批在调用线程处理，保证返回时已经处理完
+        if (copy != null) {
+            dispatch(copy, Action.DESTROY, true);
+        }
+        // 等待还在途、重试中的批次结束，最多等30秒
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (pending.get() > 0 && System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        listener.onShutDown(name, queueDepth);
+    }
+
+    /**
+     * @return 因容量已满触发溢出策略的次数
+     */
+    public long getOverflowCount() {
+        return overflowCount.sum();
+    }
+
+    /**
+     * @return 被丢弃的数据条数
+     */
+    public long getDropCount() {
+        return dropCount.sum();
+    }
+
+    /**
+     * @return 已添加但还没处理完的数据条数
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return 重试次数
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * @return 重试后仍然失败、被放弃的批次数
+     */
+    public long getFailedBatchCount() {
+        return failedBatchCount.sum();
+    }
+
+    /**
+     * @return 容器名称，也是JMX中的名称
+     */
+    public String getName() {
+        return name;
     }
 
     /**
@@ -156,4 +650,196 @@ public class SendBuffer<T> {
         // send函数还是定时任务
         SEND, TASK, DESTROY;
     }
-}
\ No newline at end of file
+
+    /**
+     * 带有首条数据添加时间的批次，自适应模式下用来计算延迟
+     * DROP_OLDEST丢弃的数据只置为null并移动起点，取出批次或者空位过多时再一次性移除，避免每次丢弃都移动整个数组
+     */
+    private static final class BatchList<T> extends ArrayList<T> {
+        private static final long serialVersionUID = 1L;
+
+        private long openedNanos;
+        // 开头已丢弃的位置数
+        private int head;
+
+        private BatchList(int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        /**
+         * @return 没有被丢弃的数据条数
+         */
+        private int count() {
+            return size() - head;
+        }
+
+        private void dropOldest() {
+            set(head++, null);
+            // 空位超过一半时再移除，均摊下来每次丢弃是常数时间
+            if (head >= 64 && head * 2 >= size()) {
+                compact();
+            }
+        }
+
+        private BatchList<T> compact() {
+            if (head > 0) {
+                removeRange(0, head);
+                head = 0;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * 容量已满时的处理策略
+     */
+    public static enum OverflowPolicy {
+        // 阻塞等待空位，超时后丢弃新数据
+        BLOCK,
+        // 丢弃新数据
+        DROP_NEWEST,
+        // 丢弃容器里最老的数据
+        DROP_OLDEST,
+        // 在调用线程直接处理
+        CALLER_RUNS;
+    }
+
+    /**
+     * SendBuffer的构建器
+     *
+     * @param <T>
+     */
+    public static class Builder<T> {
+        private final int size;
+        private final long delay;
+        private final BiPredicate<List<T>, Action> consumeFunction;
+        private final BiFunction<List<T>, Action, CompletableFuture<Boolean>> asyncConsumeFunction;
+        private int capacity = Integer.MAX_VALUE;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private long blockTimeoutNanos = TimeUnit.SECONDS.toNanos(10);
+        private Executor consumeExecutor;
+        private Executor flushExecutor;
+        private int maxInFlight = Integer.MAX_VALUE;
+        private int maxRetries;
+        private long initialBackoffMillis = 100L;
+        private long maxBackoffMillis = TimeUnit.SECONDS.toMillis(30);
+        private ScheduledExecutorService scheduler;
+        private Supplier<AdaptiveBatchController> controller;
+        private String name;
+        private SendBufferListener listener;
+
+        private Builder(int size, long delay, BiPredicate<List<T>, Action> consumeFunction,
+            BiFunction<List<T>, Action, CompletableFuture<Boolean>> asyncConsumeFunction) {
+            this.size = size;
+            this.delay = delay;
+            this.consumeFunction = consumeFunction;
+            this.asyncConsumeFunction = asyncConsumeFunction;
+        }
+
+        /**
+         * @param capacity       最多容纳多少条还未处理完的数据，不小于发送尺寸
+         * @param overflowPolicy 容量已满时的处理策略
+         */
+        public Builder<T> capacity(int capacity, OverflowPolicy overflowPolicy) {
+            this.capacity = capacity;
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * BLOCK策略下的最长等待时间，默认10秒
+         */
+        public Builder<T> blockTimeout(long timeout, TimeUnit unit) {
+            this.blockTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * 处理函数的执行器，设置后添加数据的线程不再等待处理函数返回
+         */
+        public Builder<T> consumeExecutor(Executor consumeExecutor) {
+            this.consumeExecutor = consumeExecutor;
+            return this;
+        }
+
+        /**
+         * 处理函数在虚拟线程上执行，JDK 21以下退回到共用的处理线程池
+         */
+        public Builder<T> virtualThreads() {
+            return consumeExecutor(SendBufferExecutors.virtualThreadExecutor());
+        }
+
+        /**
+         * 定时发送和重试的执行器，默认使用共用的{@link SendBufferExecutors#flushExecutor()}
+         * 指定单独的执行器后，这个容器的下游故障不会占用其他容器的线程；关闭容器时不会关闭它
+         */
+        public Builder<T> flushExecutor(Executor flushExecutor) {
+            this.flushExecutor = flushExecutor;
+            return this;
+        }
+
+        /**
+         * 同时处理中的批次上限，达到上限时发送线程等待，默认不限制
+         * 定时发送以及在共用线程上的发送不等待，排队到有名额时再发送
+         */
+        public Builder<T> maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * 处理失败（返回false或抛出异常）时的重试，等待时间从initialBackoff开始翻倍，最长不超过maxBackoff
+         *
+         * @param maxRetries     最多重试次数，默认不重试
+         * @param initialBackoff 第一次重试前的等待时间
+         * @param maxBackoff     最长等待时间
+         */
+        public Builder<T> retry(int maxRetries, long initialBackoff, long maxBackoff, TimeUnit unit) {
+            this.maxRetries = maxRetries;
+            this.initialBackoffMillis = unit.toMillis(initialBackoff);
+            this.maxBackoffMillis = unit.toMillis(maxBackoff);
+            return this;
+        }
+
+        /**
+         * 使用指定的定时器执行定时发送和重试，默认使用{@link SendBufferExecutors#scheduler()}，关闭容器时不会关闭它
+         */
+        public Builder<T> scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * 自适应模式，由控制器在运行时调整发送尺寸和定时发送间隔，构建时的尺寸和间隔作为初始值
+         * 控制器有状态，每次构建容器时都会从supplier取一个新的控制器
+         */
+        public Builder<T> adaptive(Supplier<AdaptiveBatchController> controller) {
+            this.controller = controller;
+            return this;
+        }
+
+        /**
+         * 容器名称，默认为SendBuffer-序号
+         */
+        public Builder<T> name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * 指标监听器，默认每个容器一个{@link JmxSendBufferMetrics}，传入{@link SendBufferListener#NONE}关闭指标
+         * 传入的监听器会被这个构建器创建的所有容器共用
+         */
+        public Builder<T> listener(SendBufferListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * 每次调用都会创建一个新的容器
+         */
+        public SendBuffer<T> build() {
+            return new SendBuffer<>(this);
+        }
+    }
+}
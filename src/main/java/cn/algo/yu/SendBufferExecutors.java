@@ -0,0 +1,121 @@
+package cn.algo.yu;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 各种SendBuffer共用的线程
+ * 所有容器共用一个定时器线程，定时器上只做取数据和安排任务，处理函数交给处理线程池执行，
+ * 这样容器的数量再多，线程数也不会跟着增长。
+ * 处理线程池的线程数固定为CPU核数（至少2个），空闲60秒回收；JDK 21及以上可以选择虚拟线程。
+ * 处理线程池被所有容器共用，容器在这些线程上不会等待自己的在途名额，避免一个容器的下游故障占满所有线程；
+ * 需要完全隔离时用{@link SendBuffer.Builder#flushExecutor(java.util.concurrent.Executor)}指定单独的执行器。
+ */
+public final class SendBufferExecutors {
+
+    private SendBufferExecutors() {
+    }
+
+    /**
+     * @return 共用的定时器，不能关闭
+     */
+    public static ScheduledExecutorService scheduler() {
+        return SchedulerHolder.SCHEDULER;
+    }
+
+    /**
+     * @return 共用的处理线程池，定时发送和重试时没有指定执行器的处理函数在这里执行
+     */
+    public static ExecutorService flushExecutor() {
+        return FlushExecutorHolder.FLUSH_EXECUTOR;
+    }
+
+    /**
+     * @return JDK 21及以上返回每个任务一个虚拟线程的执行器，否则返回{@link #flushExecutor()}
+     */
+    public static ExecutorService virtualThreadExecutor() {
+        return VirtualThreadHolder.VIRTUAL_THREAD_EXECUTOR;
+    }
+
+    /**
+     * @return 当前JDK是否支持虚拟线程
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreadHolder.SUPPORTED;
+    }
+
+    /**
+     * @return 当前线程是否是共用的定时器或处理线程池的线程
+     */
+    static boolean isExecutorThread() {
+        return Thread.currentThread() instanceof ExecutorThread;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new ExecutorThread(runnable, prefix + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 标记共用线程，用来判断当前线程能不能等待
+     */
+    private static final class ExecutorThread extends Thread {
+        private ExecutorThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+
+    private static final class SchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER;
+
+        static {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                daemonThreadFactory("send-buffer-timer-"));
+            // 容器关闭时取消的任务立即移出队列
+            executor.setRemoveOnCancelPolicy(true);
+            SCHEDULER = Executors.unconfigurableScheduledExecutorService(executor);
+        }
+    }
+
+    private static final class FlushExecutorHolder {
+        private static final ExecutorService FLUSH_EXECUTOR;
+
+        static {
+            int threads = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreadFactory("send-buffer-flush-"));
+            executor.allowCoreThreadTimeOut(true);
+            FLUSH_EXECUTOR = Executors.unconfigurableExecutorService(executor);
+        }
+    }
+
+    private static final class VirtualThreadHolder {
+        private static final boolean SUPPORTED;
+        private static final ExecutorService VIRTUAL_THREAD_EXECUTOR;
+
+        static {
+            ExecutorService executor = null;
+            try {
+                // 编译目标是Java 8，通过反射调用
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                executor = (ExecutorService) method.invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // 不支持虚拟线程
+            }
+            SUPPORTED = executor != null;
+            VIRTUAL_THREAD_EXECUTOR = executor != null ? executor : FlushExecutorHolder.FLUSH_EXECUTOR;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package cn.algo.yu;
+
+import java.util.function.IntSupplier;
+
+/**
+ * SendBuffer的监听器，用来采集指标
+ * 默认使用{@link JmxSendBufferMetrics}通过JMX暴露，不需要时使用{@link #NONE}。
+ * 同一个监听器可以给多个容器使用，此时指标是合计值。
+ * 回调在添加数据和处理数据的线程上执行，实现需要线程安全并且足够轻量。
+ */
+public interface SendBufferListener {
+    /**
+     * 不做任何事的监听器
+     */
+    SendBufferListener NONE = new SendBufferListener() {
+    };
+
+    /**
+     * 容器创建完成
+     *
+     * @param name       容器名称，多个容器可能同名
+     * @param queueDepth 当前已添加但还没处理完的数据条数，每个容器一个实例，关闭时原样传回
+     */
+    default void onStart(String name, IntSupplier queueDepth) {
+    }
+
+    /**
+     * 数据进入容器
+     *
+     * @param count 条数
+     */
+    default void onAdd(int count) {
+    }
+
+    /**
+     * 等待容器的锁
+     *
+     * @param waitNanos 等待时间
+     * @param acquired  是否拿到锁，false表示等待超时
+     */
+    default void onLockWait(long waitNanos, boolean acquired) {
+    }
+
+    /**
+     * 数据因容量已满被丢弃
+     *
+     * @param count 条数
+     */
+    default void onDrop(int count) {
+    }
+
+    /**
+     * 一次处理函数调用结束，重试时每次都会回调
+     *
+     * @param action       动作来源
+     * @param batchSize    批次大小
+     * @param consumeNanos 处理函数耗时
+     * @param success      是否处理成功
+     */
+    default void onFlush(SendBuffer.Action action, int batchSize, long consumeNanos, boolean success) {
+    }
+
+    /**
+     * 容器已关闭
+     *
+     * @param name       容器名称
+     * @param queueDepth onStart时传入的同一个实例，用来区分同名的容器
+     */
+    default void onShutDown(String name, IntSupplier queueDepth) {
+    }
+}
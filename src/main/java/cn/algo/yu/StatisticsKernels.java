@@ -0,0 +1,187 @@
+package cn.algo.yu;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * AbTestingUtil的批量统计内核
+ * 数据按BLOCK分块，每块先用补偿求和算出块内均值，再在块仍在缓存中时用补偿求和算离差平方和与最大最小值，
+ * 块之间用Chan的公式合并；对内存来说只读一遍数据，又不像平方和公式那样在均值远大于标准差时丢失精度。
+ * 所有数据先减去第一个样本再统计，块均值和合并都在接近0的数值上进行，最后再加回均值。
+ * 超过PARALLEL_THRESHOLD的数据用ForkJoin公共池并行处理。
+ */
+final class StatisticsKernels {
+    // 每块的元素个数，4096个double为32KB，与L1缓存相当
+    private static final int BLOCK = 4096;
+    // 每个ForkJoin任务最少处理的元素个数
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    // 内存映射的窗口大小，必须是8的倍数
+    private static final long MAPPED_WINDOW = 1L << 30;
+
+    private StatisticsKernels() {
+    }
+
+    static OnlineStatistics summarize(double[] data, int from, int to) {
+        if (from < 0 || from > to || to > data.length) {
+            throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", length " + data.length);
+        }
+        return summarize(new ArraySource(data), from, to);
+    }
+
+    /**
+     * 统计position到limit之间的数据，不改变buffer的position；可以是堆外或内存映射的buffer
+     */
+    static OnlineStatistics summarize(DoubleBuffer buffer) {
+        return summarize(new BufferSource(buffer), buffer.position(), buffer.limit());
+    }
+
+    /**
+     * 按窗口内存映射文件并统计，文件内容是连续的double
+     */
+    static OnlineStatistics summarize(Path path, ByteOrder order) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % Double.BYTES != 0) {
+                throw new IllegalArgumentException("File size " + size + " is not a multiple of " + Double.BYTES + ": " + path);
+            }
+            OnlineStatistics result = new OnlineStatistics();
+            for (long position = 0; position < size; position += MAPPED_WINDOW) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_WINDOW, size - position));
+                result.merge(summarize(mapped.order(order).asDoubleBuffer()));
+            }
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static OnlineStatistics summarize(Source source, int from, int to) {
+        if (from == to) {
+            return new OnlineStatistics();
+        }
+        double shift = source.get(from);
+        OnlineStatistics shifted = to - from <= PARALLEL_THRESHOLD
+            ? leaf(source, from, to, shift)
+            : ForkJoinPool.commonPool().invoke(new Task(source, from, to, shift));
+        return OnlineStatistics.of(shifted.getCount(), shift + shifted.getMean(), shifted.getSumOfSquaredDeviations(),
+            shifted.getMin(), shifted.getMax());
+    }
+
+    /**
+     * 顺序处理[from, to)，逐块合并
+     *
+     * @param shift 每个样本先减去的值
+     * @return 减去shift后的均值与离差平方和，最大最小值是原始值
+     */
+    private static OnlineStatistics leaf(Source source, int from, int to, double shift) {
+        OnlineStatistics result = new OnlineStatistics();
+        for (int start = from; start < to; start += BLOCK) {
+            int end = Math.min(start + BLOCK, to);
+            int n = end - start;
+            // 第一遍：补偿求和得到块内均值
+            double sum = 0;
+            double compensation = 0;
+            for (int i = start; i < end; i++) {
+                double y = (source.get(i) - shift) - compensation;
+                double t = sum + y;
+                compensation = (t - sum) - y;
+                sum = t;
+            }
+            double mean = sum / n;
+            // 第二遍：块还在缓存中，补偿求和得到离差平方和，同时修正均值的舍入误差
+            double m2 = 0;
+            double m2Compensation = 0;
+            double deviation = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                double x = source.get(i);
+                double d = (x - shift) - mean;
+                deviation += d;
+                double y = d * d - m2Compensation;
+                double t = m2 + y;
+                m2Compensation = (t - m2) - y;
+                m2 = t;
+                min = Math.min(min, x);
+                max = Math.max(max, x);
+            }
+            // 与commons-math3的修正两遍算法相同，减去离差和的平方项
+            m2 -= deviation * deviation / n;
+            result.merge(n, mean + deviation / n, m2, min, max);
+        }
+        return result;
+    }
+
+    /**
+     * 按下标读取数据，数组和DoubleBuffer共用同一套内核
+     */
+    private interface Source {
+        double get(int index);
+    }
+
+    private static final class ArraySource implements Source {
+        private final double[] data;
+
+        private ArraySource(double[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public double get(int index) {
+            return data[index];
+        }
+    }
+
+    private static final class BufferSource implements Source {
+        private final DoubleBuffer buffer;
+
+        private BufferSource(DoubleBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public double get(int index) {
+            // 绝对位置读取，不修改position，多个线程可以同时读
+            return buffer.get(index);
+        }
+    }
+
+    private static final class Task extends RecursiveTask<OnlineStatistics> {
+        private static final long serialVersionUID = 1L;
+
+        private final Source source;
+        private final int from;
+        private final int to;
+        private final double shift;
+
+        private Task(Source source, int from, int to, double shift) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+            this.shift = shift;
+        }
+
+        @Override
+        protected OnlineStatistics compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                return leaf(source, from, to, shift);
+            }
+            // 在块边界上切分，切分方式只取决于数据范围，结果与线程数无关
+            int middle = from + ((to - from) / 2 / BLOCK) * BLOCK;
+            Task left = new Task(source, from, middle, shift);
+            left.fork();
+            OnlineStatistics right = new Task(source, middle, to, shift).compute();
+            OnlineStatistics result = left.join();
+            result.merge(right);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package cn.algo.yu;
+
+/**
+ * 线程安全的在线统计量
+ * 内部有多个{@link OnlineStatistics}分片，按线程选择分片并只锁该分片，读取时把所有分片合并成一个快照。
+ * 适合多个消费线程同时累加同一个实验分组的事件流。
+ */
+public class StripedOnlineStatistics {
+    private final OnlineStatistics[] stripes;
+
+    /**
+     * 分片数为CPU核数
+     */
+    public StripedOnlineStatistics() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes 分片数
+     */
+    public StripedOnlineStatistics(int stripes) {
+        this.stripes = new OnlineStatistics[Math.max(stripes, 1)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new OnlineStatistics();
+        }
+    }
+
+    /**
+     * 累加一个样本
+     */
+    public void add(double value) {
+        OnlineStatistics stripe = stripe();
+        synchronized (stripe) {
+            stripe.add(value);
+        }
+    }
+
+    /**
+     * 累加一组样本，整组只加一次锁
+     */
+    public void addAll(double[] values) {
+        OnlineStatistics stripe = stripe();
+        synchronized (stripe) {
+            stripe.addAll(values);
+        }
+    }
+
+    /**
+     * 合并其他累加器，例如其他节点传来的部分结果
+     */
+    public void merge(OnlineStatistics other) {
+        OnlineStatistics stripe = stripe();
+        synchronized (stripe) {
+            stripe.merge(other);
+        }
+    }
+
+    /**
+     * 合并所有分片
+     * 各分片依次加锁，快照不是所有分片在同一时刻的状态，但包含调用前已经累加完成的样本。
+     *
+     * @return 新的累加器，之后的累加不影响它
+     */
+    public OnlineStatistics snapshot() {
+        OnlineStatistics result = new OnlineStatistics();
+        for (OnlineStatistics stripe : stripes) {
+            synchronized (stripe) {
+                result.merge(stripe);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 清空所有分片
+     */
+    public void reset() {
+        for (OnlineStatistics stripe : stripes) {
+            synchronized (stripe) {
+                stripe.reset();
+            }
+        }
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * 按线程选择分片
+     */
+    private OnlineStatistics stripe() {
+        int hash = (int) Thread.currentThread().getId();
+        // 打散低位，避免连续的线程id落到相邻分片
+        hash *= 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+    }
+}
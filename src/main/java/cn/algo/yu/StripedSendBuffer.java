@@ -0,0 +1,136 @@
+package cn.algo.yu;
+
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * 分片的SendBuffer
+ * 内部有多个SendBuffer，每个分片有自己的锁和容器，各自按尺寸和时间发送，生产者之间不再抢同一把锁。
+ * 默认按线程选择分片；传入key函数时按key选择分片，同一个key的数据总在同一个分片里，批次内保持添加顺序。
+ * 所有分片和其他容器一样共用一个定时器。
+ *
+ * @param <T>
+ */
+public class StripedSendBuffer<T> {
+    private final SendBuffer<T>[] stripes;
+    private final Function<? super T, ?> keyFunction;
+
+    /**
+     * 按线程分片，分片数为CPU核数
+     */
+    public StripedSendBuffer(int size, long delay, BiPredicate<List<T>, SendBuffer.Action> consumeFunction) {
+        this(Runtime.getRuntime().availableProcessors(), null, SendBuffer.builder(size, delay, consumeFunction));
+    }
+
+    /**
+     * @param stripes         分片数
+     * @param keyFunction     分片的key，为null时按线程分片
+     * @param size            每个分片的发送尺寸
+     * @param delay           每个分片定时发送的间隔（毫秒）
+     * @param consumeFunction 处理函数，不同分片可能并发调用
+     */
+    public StripedSendBuffer(int stripes, Function<? super T, ?> keyFunction, int size, long delay,
+        BiPredicate<List<T>, SendBuffer.Action> consumeFunction) {
+        this(stripes, keyFunction, SendBuffer.builder(size, delay, consumeFunction));
+    }
+
+    /**
+     * @param stripes     分片数
+     * @param keyFunction 分片的key，为null时按线程分片
+     * @param builder     每个分片的配置，容量等限制按分片计算
+     */
+    @SuppressWarnings("unchecked")
+    public StripedSendBuffer(int stripes, Function<? super T, ?> keyFunction, SendBuffer.Builder<T> builder) {
+        this.keyFunction = keyFunction;
+        this.stripes = (SendBuffer<T>[]) new SendBuffer<?>[Math.max(stripes, 1)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = builder.build();
+        }
+    }
+
+    public boolean add(T t) {
+        if (t == null) {
+            return false;
+        }
+        return stripe(t).add(t);
+    }
+
+    public boolean addList(List<T> ts) {
+        if (ts == null || ts.isEmpty()) {
+            return false;
+        }
+        if (keyFunction == null) {
+            // 按线程分片时整批都属于同一个分片
+            return stripe(null).addList(ts);
+        }
+        // 与SendBuffer一致，部分消费失败也按成功算
+        for (T t : ts) {
+            add(t);
+        }
+        return true;
+    }
+
+    /**
+     * 选择分片
+     */
+    private SendBuffer<T> stripe(T t) {
+        int hash;
+        if (keyFunction == null) {
+            hash = (int) Thread.currentThread().getId();
+        } else {
+            Object key = keyFunction.apply(t);
+            hash = key == null ? 0 : key.hashCode();
+        }
+        // 打散低位，避免连续的线程id或者key落到相邻分片
+        hash *= 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    public void shutDown() {
+        for (SendBuffer<T> stripe : stripes) {
+            stripe.shutDown();
+        }
+    }
+
+    /**
+     * @return 分片数
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * @return 所有分片已添加但还没处理完的数据条数
+     */
+    public int getPendingCount() {
+        int pending = 0;
+        for (SendBuffer<T> stripe : stripes) {
+            pending += stripe.getPendingCount();
+        }
+        return pending;
+    }
+
+    /**
+     * @return 所有分片被丢弃的数据条数
+     */
+    public long getDropCount() {
+        long dropped = 0L;
+        for (SendBuffer<T> stripe : stripes) {
+            dropped += stripe.getDropCount();
+        }
+        return dropped;
+    }
+
+    /**
+     * @return 所有分片重试后仍然失败的批次数
+     */
+    public long getFailedBatchCount() {
+        long failed = 0L;
+        for (SendBuffer<T> stripe : stripes) {
+            failed += stripe.getFailedBatchCount();
+        }
+        return failed;
+    }
+}
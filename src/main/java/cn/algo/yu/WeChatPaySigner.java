@@ -0,0 +1,426 @@
+package cn.algo.yu;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 微信支付（V2）签名器
+ * 绑定一个APIKEY和签名类型，可以在多个线程间共享。
+ * 签名串为按参数名ASCII排序的key=value&...&key=APIKEY，值为空或null的参数和sign参数不参与签名，
+ * 签名串按UTF-8编码后直接分段写入摘要，不拼接完整的字符串，结果为大写十六进制。
+ */
+public class WeChatPaySigner {
+    /**
+     * 参数中签名字段的名称
+     */
+    public static final String FIELD_SIGN = "sign";
+    /**
+     * 参数中签名类型字段的名称
+     */
+    public static final String FIELD_SIGN_TYPE = "sign_type";
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+    // 编码缓冲区大小，写满后送入摘要
+    private static final int BUFFER_SIZE = 1024;
+    // 批量验证时每个任务处理的条数
+    private static final int VERIFY_CHUNK = 64;
+    private static final Comparator<Map.Entry<?, ?>> KEY_ORDER = Comparator.comparing(e -> String.valueOf(e.getKey()));
+
+    private static final ThreadLocal<Engine> ENGINE = ThreadLocal.withInitial(Engine::new);
+
+    private final String apiKey;
+    private final SignType signType;
+    // "key=" + APIKEY 的UTF-8字节
+    private final byte[] keySuffix;
+    // HMAC和密钥绑定，每个签名器每个线程一份
+    private final ThreadLocal<Mac> macs;
+
+    public WeChatPaySigner(String apiKey) {
+        this(apiKey, SignType.MD5);
+    }
+
+    /**
+     * @param apiKey   微信支付的APIKEY
+     * @param signType 签名类型
+     */
+    public WeChatPaySigner(String apiKey, SignType signType) {
+        if (apiKey == null || signType == null) {
+            throw new IllegalArgumentException("apiKey and signType must not be null");
+        }
+        this.apiKey = apiKey;
+        this.signType = signType;
+        this.keySuffix = ("key=" + apiKey).getBytes(StandardCharsets.UTF_8);
+        this.macs = signType == SignType.HMAC_SHA256 ? ThreadLocal.withInitial(this::newMac) : null;
+    }
+
+    public SignType getSignType() {
+        return signType;
+    }
+
+    /**
+     * 签名
+     *
+     * @param params 请求参数，SortedMap按自身顺序遍历，其他Map按参数名排序
+     * @return 大写十六进制签名
+     */
+    public String sign(Map<?, ?> params) {
+        Engine engine = ENGINE.get();
+        byte[] digest = digest(engine, params);
+        char[] chars = engine.chars;
+        for (int i = 0; i < digest.length; i++) {
+            chars[i << 1] = HEX_UPPER[(digest[i] >>> 4) & 0xF];
+            chars[(i << 1) + 1] = HEX_UPPER[digest[i] & 0xF];
+        }
+        return new String(chars, 0, digest.length << 1);
+    }
+
+    /**
+     * 验证回调参数中的sign字段
+     *
+     * @param params 回调参数
+     * @return 签名是否正确
+     */
+    public boolean verify(Map<?, ?> params) {
+        Object sign = params.get(FIELD_SIGN);
+        return sign != null && verify(params, sign.toString());
+    }
+
+    /**
+     * 常量时间比较签名，不区分大小写
+     *
+     * @param params    参数，其中的sign字段不参与计算
+     * @param signature 待验证的十六进制签名
+     * @return 签名是否正确
+     */
+    public boolean verify(Map<?, ?> params, String signature) {
+        Engine engine = ENGINE.get();
+        byte[] expected = digest(engine, params);
+        if (signature == null || signature.length() != expected.length << 1) {
+            return false;
+        }
+        byte[] actual = engine.decoded(expected.length);
+        boolean valid = true;
+        for (int i = 0; i < expected.length; i++) {
+            int high = Character.digit(signature.charAt(i << 1), 16);
+            int low = Character.digit(signature.charAt((i << 1) + 1), 16);
+            valid &= high >= 0 & low >= 0;
+            actual[i] = (byte) (high << 4 | low);
+        }
+        return MessageDigest.isEqual(expected, actual) & valid;
+    }
+
+    /**
+     * 解析并验证一条回调通知的XML
+     *
+     * @param payload 回调通知的XML
+     * @return 验证结果，解析失败时valid为false，error为解析异常
+     */
+    public Verification verifyPayload(String payload) {
+        long start = System.nanoTime();
+        Map<String, String> params;
+        try {
+            params = XMLUtil.convertToMap(payload);
+        } catch (RuntimeException e) {
+            return new Verification(null, false, e, System.nanoTime() - start, 0L);
+        }
+        long parsed = System.nanoTime();
+        String type = params.get(FIELD_SIGN_TYPE);
+        if (type != null && !type.isEmpty() && !signType.value.equalsIgnoreCase(type)) {
+            IllegalArgumentException error = new IllegalArgumentException("sign_type mismatch: " + type);
+            return new Verification(params, false, error, parsed - start, 0L);
+        }
+        boolean valid = verify(params);
+        return new Verification(params, valid, null, parsed - start, System.nanoTime() - parsed);
+    }
+
+    /**
+     * 在ForkJoin公共池上批量验证回调通知
+     *
+     * @param payloads 回调通知的XML
+     * @return 与输入一一对应的验证结果
+     */
+    public List<Verification> verifyAll(List<String> payloads) {
+        return verifyAll(payloads, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 批量验证回调通知，按每64条一个任务提交到线程池，同一任务内复用线程的解析器和摘要
+     *
+     * @param payloads 回调通知的XML
+     * @param executor 执行验证的线程池
+     * @return 与输入一一对应的验证结果
+     */
+    public List<Verification> verifyAll(List<String> payloads, Executor executor) {
+        List<String> list = payloads instanceof RandomAccess ? payloads : new ArrayList<>(payloads);
+        Verification[] result = new Verification[list.size()];
+        int chunks = (result.length + VERIFY_CHUNK - 1) / VERIFY_CHUNK;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[chunks];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = chunk * VERIFY_CHUNK;
+            int to = Math.min(from + VERIFY_CHUNK, result.length);
+            futures[chunk] = CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    result[i] = verifyPayload(list.get(i));
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).join();
+        return Arrays.asList(result);
+    }
+
+    private byte[] digest(Engine engine, Map<?, ?> params) {
+        Object target = signType == SignType.MD5 ? engine.md5 : macs.get();
+        engine.begin(target);
+        if (params instanceof SortedMap) {
+            for (Map.Entry<?, ?> entry : params.entrySet()) {
+                engine.append(entry);
+            }
+        } else {
+            List<Map.Entry<?, ?>> entries = new ArrayList<>(params.entrySet());
+            entries.sort(KEY_ORDER);
+            for (Map.Entry<?, ?> entry : entries) {
+                engine.append(entry);
+            }
+        }
+        engine.put(keySuffix);
+        return engine.finish();
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(apiKey.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 一条回调通知的验证结果
+     */
+    public static final class Verification {
+        private final Map<String, String> params;
+        private final boolean valid;
+        private final Exception error;
+        private final long parseNanos;
+        private final long verifyNanos;
+
+        private Verification(Map<String, String> params, boolean valid, Exception error, long parseNanos, long verifyNanos) {
+            this.params = params;
+            this.valid = valid;
+            this.error = error;
+            this.parseNanos = parseNanos;
+            this.verifyNanos = verifyNanos;
+        }
+
+        /**
+         * @return 签名是否正确
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * @return 解析出的参数，解析失败时为null
+         */
+        public Map<String, String> getParams() {
+            return params;
+        }
+
+        /**
+         * @return 解析失败或签名类型不符时的原因，否则为null
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * @return 解析XML的耗时（纳秒）
+         */
+        public long getParseNanos() {
+            return parseNanos;
+        }
+
+        /**
+         * @return 计算和比较签名的耗时（纳秒），没有验证时为0
+         */
+        public long getVerifyNanos() {
+            return verifyNanos;
+        }
+    }
+
+    /**
+     * 签名类型，对应请求参数中的sign_type
+     */
+    public enum SignType {
+        MD5("MD5"),
+        HMAC_SHA256("HMAC-SHA256");
+
+        private final String value;
+
+        SignType(String value) {
+            this.value = value;
+        }
+
+        /**
+         * @return sign_type参数的取值
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @param value sign_type参数的取值，为空时按微信的约定视为MD5
+         */
+        public static SignType of(String value) {
+            if (value == null || value.isEmpty()) {
+                return MD5;
+            }
+            for (SignType type : values()) {
+                if (type.value.equalsIgnoreCase(value)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown sign_type: " + value);
+        }
+    }
+
+    /**
+     * 线程内复用的摘要和缓冲区
+     */
+    private static final class Engine {
+        private final MessageDigest md5;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final char[] chars = new char[64];
+        private byte[] decoded = new byte[32];
+        private int position;
+        // 当前写入的MessageDigest或Mac
+        private MessageDigest digest;
+        private Mac mac;
+
+        private Engine() {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * 开始一次签名，清掉上一次异常中断时留在缓冲区和摘要里的数据
+         */
+        private void begin(Object target) {
+            position = 0;
+            if (target instanceof Mac) {
+                mac = (Mac) target;
+                // 重置后保留密钥
+                mac.reset();
+                digest = null;
+            } else {
+                digest = (MessageDigest) target;
+                digest.reset();
+                mac = null;
+            }
+        }
+
+        /**
+         * 写入key=value&，跳过空值和sign
+         */
+        private void append(Map.Entry<?, ?> entry) {
+            Object value = entry.getValue();
+            if (value == null || "".equals(value)) {
+                return;
+            }
+            Object key = entry.getKey();
+            if (FIELD_SIGN.equals(key)) {
+                return;
+            }
+            put(key instanceof CharSequence ? (CharSequence) key : String.valueOf(key));
+            put('=');
+            put(value instanceof CharSequence ? (CharSequence) value : String.valueOf(value));
+            put('&');
+        }
+
+        private void put(CharSequence s) {
+            int length = s.length();
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    put((byte) c);
+                } else if (c < 0x800) {
+                    put((byte) (0xC0 | (c >> 6)));
+                    put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                        put((byte) (0xF0 | (codePoint >> 18)));
+                        put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                        put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                        put((byte) (0x80 | (codePoint & 0x3F)));
+                    } else {
+                        // 与String.getBytes一致，不成对的代理字符编码为'?'
+                        put((byte) '?');
+                    }
+                } else {
+                    put((byte) (0xE0 | (c >> 12)));
+                    put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+
+        private void put(char c) {
+            put((byte) c);
+        }
+
+        private void put(byte b) {
+            if (position == BUFFER_SIZE) {
+                flush();
+            }
+            buffer[position++] = b;
+        }
+
+        private void put(byte[] bytes) {
+            flush();
+            update(bytes, bytes.length);
+        }
+
+        private void flush() {
+            update(buffer, position);
+            position = 0;
+        }
+
+        private void update(byte[] bytes, int length) {
+            if (mac != null) {
+                mac.update(bytes, 0, length);
+            } else {
+                digest.update(bytes, 0, length);
+            }
+        }
+
+        private byte[] finish() {
+            flush();
+            return mac != null ? mac.doFinal() : digest.digest();
+        }
+
+        private byte[] decoded(int length) {
+            if (decoded.length != length) {
+                decoded = new byte[length];
+            }
+            return decoded;
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package cn.algo.yu;
 
 import java.math.BigDecimal;
-import java.security.MessageDigest;
-import java.util.Map;
+import java.math.RoundingMode;
 import java.util.SortedMap;
 
 /**
@@ -11,6 +10,8 @@ import java.util.SortedMap;
  * @Date: 2020/9/27 11:57
  */
 public class WeChatPayUtil {
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
     /**
      * @param map:    构建的请求参数
      * @param apiKey: 微信支付的APIKEY
@@ -20,47 +21,102 @@ public class WeChatPayUtil {
      * @return: java.lang.String 签名的MD5字符串
      */
     public static String weChatPaySign(SortedMap<Object, Object> map, String apiKey) {
-        StringBuffer sb = new StringBuffer();
-        for (Map.Entry<Object, Object> m : map.entrySet()) {
-            if ("".equals(m.getValue()) || null == m.getValue()) {
-                continue;
-            }
-            sb.append(m.getKey()).append("=").append(m.getValue()).append("&");
-        }
-        sb.append("key=" + apiKey);
-        String md5Str = "";
-        try {
-            MessageDigest md5 = MessageDigest.getInstance("MD5");
-            byte[] digest = md5.digest(sb.toString().getBytes());
-
-            int i;
-            StringBuffer buf = new StringBuffer();
-
-            for (int offset = 0; offset < digest.length; offset++) {
-                i = digest[offset];
-                if (i < 0) {
-                    i += 256;
-                }
-                if (i < 16) {
-                    buf.append("0");
-                }
-                buf.append(Integer.toHexString(i));
-            }
-            md5Str = buf.toString().toUpperCase();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return md5Str;
+        // 频繁签名时建议直接持有WeChatPaySigner
+        return new WeChatPaySigner(apiKey).sign(map);
     }
 
 
     public static Object convertToPenny(BigDecimal yuan, Boolean toInt) {
-        BigDecimal bigDecimal = yuan.multiply(new BigDecimal(100)).setScale(0, BigDecimal.ROUND_HALF_UP);
+        BigDecimal bigDecimal = yuan.multiply(HUNDRED).setScale(0, BigDecimal.ROUND_HALF_UP);
         return toInt ? bigDecimal.intValue() : bigDecimal;
     }
 
+    /**
+     * 元转换为分，四舍五入
+     *
+     * @param yuan 金额，单位为元
+     * @return 金额，单位为分
+     * @throws ArithmeticException 超出long的范围
+     */
+    public static long convertToPenny(BigDecimal yuan) {
+        return Money.of(yuan, RoundingMode.HALF_UP).getCents();
+    }
+
+    /**
+     * 解析以元为单位的字符串为分，四舍五入，不经过BigDecimal，见{@link Money#parseCents(CharSequence, RoundingMode)}
+     */
+    public static long convertToPenny(CharSequence yuan) {
+        return Money.parseCents(yuan, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * 批量把元转换为分，见{@link #convertToPenny(BigDecimal)}
+     */
+    public static long[] convertToPenny(BigDecimal[] yuan) {
+        long[] pennies = new long[yuan.length];
+        for (int i = 0; i < yuan.length; i++) {
+            pennies[i] = convertToPenny(yuan[i]);
+        }
+        return pennies;
+    }
+
 
     public static String convertToYuan(int price) {
-        return BigDecimal.valueOf(Long.valueOf(price)).divide(new BigDecimal(100)).toString();
+        return convertToYuan((long) price);
+    }
+
+    /**
+     * 分转换为元，结果与BigDecimal除以100的toString相同：100为1，150为1.5，105为1.05，5为0.05
+     *
+     * @param price 金额，单位为分
+     * @return 金额，单位为元
+     */
+    public static String convertToYuan(long price) {
+        return Money.ofCents(price).toString();
+    }
+
+    /**
+     * 把分转换为元追加到out，见{@link #convertToYuan(long)}
+     */
+    public static void appendYuan(long price, StringBuilder out) {
+        Money.appendYuan(price, out);
+    }
+
+    /**
+     * 批量把分转换为元，按顺序写入out，每个金额后面跟一个separator；数量较多时分段并行转换
+     *
+     * @param prices    金额数组，单位为分
+     * @param offset    起始下标
+     * @param length    数量
+     * @param out       输出
+     * @param separator 分隔符
+     */
+    public static void convertToYuan(long[] prices, int offset, int length, Appendable out, CharSequence separator) {
+        if (offset < 0 || length < 0 || offset > prices.length - length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + prices.length);
+        }
+        AmountUtil.writeBatch(offset, length, out, (builder, from, to) -> {
+            char[] chars = new char[Money.FORMAT_LENGTH];
+            for (int i = from; i < to; i++) {
+                int start = Money.format(prices[i], false, chars);
+                builder.append(chars, start, Money.FORMAT_LENGTH - start).append(separator);
+            }
+        });
+    }
+
+    /**
+     * 批量把分转换为元，见{@link #convertToYuan(long[], int, int, Appendable, CharSequence)}
+     */
+    public static void convertToYuan(int[] prices, int offset, int length, Appendable out, CharSequence separator) {
+        if (offset < 0 || length < 0 || offset > prices.length - length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + prices.length);
+        }
+        AmountUtil.writeBatch(offset, length, out, (builder, from, to) -> {
+            char[] chars = new char[Money.FORMAT_LENGTH];
+            for (int i = from; i < to; i++) {
+                int start = Money.format(prices[i], false, chars);
+                builder.append(chars, start, Money.FORMAT_LENGTH - start).append(separator);
+            }
+        });
     }
-}
\ No newline at end of file
+}
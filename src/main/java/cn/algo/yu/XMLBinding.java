@@ -0,0 +1,319 @@
+package cn.algo.yu;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * XMLUtil对象绑定的类元数据
+ * 每个类只在第一次使用时解析一次字段并生成MethodHandle，之后每条报文的读写不再经过反射。
+ * 绑定非static、非transient、非final的字段，父类字段在前；字段类型可以是字符串、基本类型及其包装类、
+ * BigDecimal、BigInteger、枚举、嵌套对象，以及元素为以上类型的List（同名元素重复出现）。
+ */
+final class XMLBinding {
+    private static final ClassValue<XMLBinding> BINDINGS = new ClassValue<XMLBinding>() {
+        @Override
+        protected XMLBinding computeValue(Class<?> type) {
+            return new XMLBinding(type);
+        }
+    };
+
+    private final MethodHandle constructor;
+    private final Property[] properties;
+    private final Map<String, Property> byName = new HashMap<>();
+
+    static XMLBinding of(Class<?> type) {
+        return BINDINGS.get(type);
+    }
+
+    private XMLBinding(Class<?> type) {
+        if (parser(type) != null || type.isInterface() || type.isArray() || Modifier.isAbstract(type.getModifiers())
+            || type.getName().startsWith("java.")) {
+            throw new IllegalArgumentException("Cannot bind " + type.getName() + " as an XML element object");
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Constructor<?> declared = type.getDeclaredConstructor();
+            declared.setAccessible(true);
+            constructor = lookup.unreflectConstructor(declared).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException(type.getName() + " needs a no-argument constructor", e);
+        }
+        Deque<Class<?>> hierarchy = new ArrayDeque<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.push(c);
+        }
+        List<Property> list = new ArrayList<>();
+        for (Class<?> c : hierarchy) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                Property property = new Property(lookup, field);
+                if (byName.put(property.name, property) != null) {
+                    throw new IllegalArgumentException("Duplicate XML element " + property.name + " in " + type.getName());
+                }
+                list.add(property);
+            }
+        }
+        properties = list.toArray(new Property[0]);
+    }
+
+    /**
+     * 从当前元素的开始标签读到对应的结束标签
+     */
+    Object read(XMLStreamReader reader, StringBuilder text) throws XMLStreamException {
+        Object bean = newInstance();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return bean;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            Property property = byName.get(reader.getLocalName());
+            if (property == null) {
+                readText(reader, null);
+                continue;
+            }
+            Object value;
+            if (property.beanType != null) {
+                value = of(property.beanType).read(reader, text);
+            } else {
+                value = property.parse(readText(reader, text));
+            }
+            if (value != null) {
+                property.set(bean, value);
+            }
+        }
+        throw new XMLStreamException("Unexpected end of document");
+    }
+
+    /**
+     * 写出对象的所有非null字段，不包含对象自身的标签
+     */
+    void write(Object bean, StringBuilder out, boolean cdata) {
+        for (Property property : properties) {
+            Object value = property.get(bean);
+            if (value == null) {
+                continue;
+            }
+            if (property.list) {
+                for (Object item : (Collection<?>) value) {
+                    writeValue(property, item, out, cdata);
+                }
+            } else {
+                writeValue(property, value, out, cdata);
+            }
+        }
+    }
+
+    private static void writeValue(Property property, Object value, StringBuilder out, boolean cdata) {
+        if (value == null) {
+            return;
+        }
+        if (property.beanType != null) {
+            out.append('<').append(property.name).append('>');
+            of(value.getClass()).write(value, out, cdata);
+            out.append("</").append(property.name).append('>');
+        } else {
+            String text = value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+            XMLUtil.writeElement(out, property.name, text, cdata);
+        }
+    }
+
+    /**
+     * 读取当前元素内的所有文本直到对应的结束标签，text为null时只跳过
+     */
+    private static String readText(XMLStreamReader reader, StringBuilder text) throws XMLStreamException {
+        if (text != null) {
+            text.setLength(0);
+        }
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (text != null) {
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("Unexpected end of document");
+                default:
+                    break;
+            }
+        }
+        return text == null ? null : text.toString();
+    }
+
+    private Object newInstance() {
+        try {
+            return (Object) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 标量类型的解析函数，不是标量时返回null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Function<String, Object> parser(Class<?> type) {
+        if (type == String.class) {
+            return s -> s;
+        } else if (type == int.class || type == Integer.class) {
+            return s -> Integer.valueOf(s.trim());
+        } else if (type == long.class || type == Long.class) {
+            return s -> Long.valueOf(s.trim());
+        } else if (type == boolean.class || type == Boolean.class) {
+            return s -> Boolean.valueOf(s.trim());
+        } else if (type == double.class || type == Double.class) {
+            return s -> Double.valueOf(s.trim());
+        } else if (type == float.class || type == Float.class) {
+            return s -> Float.valueOf(s.trim());
+        } else if (type == short.class || type == Short.class) {
+            return s -> Short.valueOf(s.trim());
+        } else if (type == byte.class || type == Byte.class) {
+            return s -> Byte.valueOf(s.trim());
+        } else if (type == char.class || type == Character.class) {
+            return s -> s.charAt(0);
+        } else if (type == BigDecimal.class) {
+            return s -> new BigDecimal(s.trim());
+        } else if (type == BigInteger.class) {
+            return s -> new BigInteger(s.trim());
+        } else if (type.isEnum()) {
+            return s -> Enum.valueOf((Class<? extends Enum>) type, s.trim());
+        }
+        return null;
+    }
+
+    /**
+     * 一个绑定的字段
+     */
+    private static final class Property {
+        private final String name;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final boolean list;
+        // 字段或List元素是否为字符串
+        private final boolean string;
+        // 字段或List元素为标量时的解析函数
+        private final Function<String, Object> parser;
+        // 字段或List元素为嵌套对象时的类型
+        private final Class<?> beanType;
+
+        private Property(MethodHandles.Lookup lookup, Field field) {
+            XMLElement element = field.getAnnotation(XMLElement.class);
+            name = element != null ? element.value() : field.getName();
+            XMLUtil.checkName(name);
+            field.setAccessible(true);
+            try {
+                getter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+                setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException(e);
+            }
+            Class<?> type = field.getType();
+            list = type == List.class || type == Collection.class || type == ArrayList.class;
+            if (list) {
+                type = elementType(field);
+            } else if (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type) || type.isArray()) {
+                throw new IllegalArgumentException("Unsupported field type " + type.getName() + " of " + field);
+            }
+            string = type == String.class;
+            parser = parser(type);
+            beanType = parser == null ? type : null;
+        }
+
+        private static Class<?> elementType(Field field) {
+            Type generic = field.getGenericType();
+            if (generic instanceof ParameterizedType) {
+                Type argument = ((ParameterizedType) generic).getActualTypeArguments()[0];
+                if (argument instanceof Class) {
+                    return (Class<?>) argument;
+                }
+                if (argument instanceof ParameterizedType) {
+                    return (Class<?>) ((ParameterizedType) argument).getRawType();
+                }
+            }
+            return String.class;
+        }
+
+        /**
+         * 空文本不赋值，基本类型保持默认值，其他类型保持null；字符串字段赋值为空串
+         */
+        private Object parse(String text) {
+            if (string) {
+                return text;
+            }
+            if (text.trim().isEmpty()) {
+                return null;
+            }
+            try {
+                return parser.apply(text);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Illegal value for element " + name + ": " + text, e);
+            }
+        }
+
+        private Object get(Object bean) {
+            try {
+                return (Object) getter.invokeExact(bean);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void set(Object bean, Object value) {
+            try {
+                if (list) {
+                    Collection<Object> items = (Collection<Object>) get(bean);
+                    if (items == null) {
+                        items = new ArrayList<>();
+                        setter.invokeExact(bean, (Object) items);
+                    }
+                    items.add(value);
+                } else {
+                    setter.invokeExact(bean, value);
+                }
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package cn.algo.yu;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 指定字段在XML中的元素名，没有标注时使用字段名
+ * 例如微信支付的out_trade_no可以绑定到outTradeNo字段。
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface XMLElement {
+    /**
+     * @return 元素名
+     */
+    String value();
+}
@@ -1,22 +1,16 @@
 package cn.algo.yu;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,6 +20,34 @@ import java.util.Map;
  * @Date: 2020/9/27 11:34
  */
 public class XMLUtil {
+    // 保留在线程里的文本缓冲区上限，超过后丢弃
+    private static final int MAX_CACHED_TEXT = 8192;
+    // 每个线程一个StAX工厂，关闭DTD和外部实体防止XXE
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    });
+    private static final ThreadLocal<StringBuilder> TEXT = ThreadLocal.withInitial(StringBuilder::new);
+    private static final ThreadLocal<StringBuilder> OUTPUT = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    /**
+     * 写XML时的选项
+     */
+    public enum WriteOption {
+        /**
+         * 按元素名排序输出，结果与Map的遍历顺序无关
+         */
+        SORTED,
+        /**
+         * 值放在CDATA中，不做转义
+         */
+        CDATA
+    }
+
     /**
      * @param data: 要转换成XML的Map对象
      * @Author: MachineGeek
@@ -34,46 +56,192 @@ public class XMLUtil {
      * @return: java.lang.String
      */
     public static String convertToXML(Map<String, String> data) {
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder documentBuilder = null;
+        StringBuilder out = output();
+        write(data, out, false, false);
+        return out.toString();
+    }
+
+    /**
+     * 将Map对象写为XML，根节点为xml，不缩进，值去掉首尾空白，null写为空元素
+     *
+     * @param data    要转换成XML的Map对象
+     * @param out     输出目标，StringBuilder直接写入，其他目标一次性追加
+     * @param options 写入选项
+     */
+    public static void writeXML(Map<String, ?> data, Appendable out, WriteOption... options) {
+        boolean sorted = has(options, WriteOption.SORTED);
+        boolean cdata = has(options, WriteOption.CDATA);
+        if (out instanceof StringBuilder) {
+            write(data, (StringBuilder) out, sorted, cdata);
+            return;
+        }
+        StringBuilder builder = output();
+        write(data, builder, sorted, cdata);
         try {
-            documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            Document document = documentBuilder.newDocument();
-            Element root = document.createElement("xml");
-            document.appendChild(root);
-            for (String key : data.keySet()) {
-                String value = data.get(key);
-                if (value == null) {
-                    value = "";
-                }
-                value = value.trim();
-                Element filed = document.createElement(key);
-                filed.appendChild(document.createTextNode(value));
-                root.appendChild(filed);
+            out.append(builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 将Map对象按UTF-8写入ByteBuffer，从position开始写，写完position后移
+     *
+     * @param data    要转换成XML的Map对象
+     * @param out     输出缓冲区，空间不足时抛出BufferOverflowException
+     * @param options 写入选项
+     */
+    public static void writeXML(Map<String, ?> data, ByteBuffer out, WriteOption... options) {
+        StringBuilder builder = output();
+        write(data, builder, has(options, WriteOption.SORTED), has(options, WriteOption.CDATA));
+        int length = builder.length();
+        for (int i = 0; i < length; i++) {
+            char c = builder.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(builder.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, builder.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static void write(Map<String, ?> data, StringBuilder out, boolean sorted, boolean cdata) {
+        out.append("<xml>");
+        if (sorted) {
+            String[] keys = data.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            for (String key : keys) {
+                writeElement(out, key, data.get(key), cdata);
+            }
+        } else {
+            for (Map.Entry<String, ?> entry : data.entrySet()) {
+                writeElement(out, entry.getKey(), entry.getValue(), cdata);
+            }
+        }
+        out.append("</xml>");
+    }
+
+    static void writeElement(StringBuilder out, String name, Object value, boolean cdata) {
+        checkName(name);
+        String text = value == null ? "" : value.toString().trim();
+        if (text.isEmpty()) {
+            out.append('<').append(name).append("/>");
+            return;
+        }
+        out.append('<').append(name).append('>');
+        if (cdata) {
+            appendCData(out, text);
+        } else {
+            appendEscaped(out, text);
+        }
+        out.append("</").append(name).append('>');
+    }
+
+    /**
+     * 转义文本中的特殊字符，回车写为字符引用，XML 1.0不允许的控制字符直接丢弃
+     */
+    private static void appendEscaped(StringBuilder out, String text) {
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            String replacement;
+            if (c == '&') {
+                replacement = "&amp;";
+            } else if (c == '<') {
+                replacement = "&lt;";
+            } else if (c == '>') {
+                replacement = "&gt;";
+            } else if (c == '\r') {
+                replacement = "&#13;";
+            } else if (isIllegal(c)) {
+                replacement = "";
+            } else {
+                continue;
+            }
+            out.append(text, start, i).append(replacement);
+            start = i + 1;
+        }
+        out.append(text, start, length);
+    }
+
+    /**
+     * 写CDATA，值中的]]>拆到两段CDATA中，XML 1.0不允许的控制字符直接丢弃
+     * ]]的判断看实际写出的字符，丢弃控制字符后拼出的]]>同样会被拆开
+     */
+    private static void appendCData(StringBuilder out, String text) {
+        out.append("<![CDATA[");
+        int length = text.length();
+        // 最近写出的两个字符
+        char last = 0;
+        char beforeLast = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (isIllegal(c)) {
+                continue;
+            }
+            if (c == '>' && last == ']' && beforeLast == ']') {
+                out.append("]]><![CDATA[");
             }
+            out.append(c);
+            beforeLast = last;
+            last = c;
+        }
+        out.append("]]>");
+    }
+
+    private static boolean isIllegal(char c) {
+        return c < 0x20 && c != '\t' && c != '\n' && c != '\r' || c == 0xFFFE || c == 0xFFFF;
+    }
 
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer transformer = tf.newTransformer();
-            DOMSource source = new DOMSource(document);
-            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            StringWriter writer = new StringWriter();
-            StreamResult result = new StreamResult(writer);
-            transformer.transform(source, result);
-            String output = writer.getBuffer().toString();
-
-            try {
-                writer.close();
-            } catch (Exception ex) {
-                ex.printStackTrace();
+    /**
+     * 元素名只允许字母、数字、下划线、连字符、点和冒号，且不能以数字、连字符或点开头
+     */
+    static void checkName(String name) {
+        boolean valid = name != null && !name.isEmpty();
+        for (int i = 0; valid && i < name.length(); i++) {
+            char c = name.charAt(i);
+            valid = Character.isLetter(c) || c == '_' || c == ':'
+                || i > 0 && (Character.isDigit(c) || c == '-' || c == '.');
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Illegal element name: " + name);
+        }
+    }
+
+    private static boolean has(WriteOption[] options, WriteOption option) {
+        for (WriteOption o : options) {
+            if (o == option) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            output = output.substring(output.indexOf("?>") + 2);
-            return output;
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * 线程复用的输出缓冲区，过大时丢弃
+     */
+    private static StringBuilder output() {
+        StringBuilder builder = OUTPUT.get();
+        if (builder.capacity() > MAX_CACHED_TEXT) {
+            builder = new StringBuilder(512);
+            OUTPUT.set(builder);
         }
-        return null;
+        builder.setLength(0);
+        return builder;
     }
 
 
@@ -85,45 +253,207 @@ public class XMLUtil {
      * @return: java.util.Map<java.lang.String, java.lang.String>
      */
     public static Map<String, String> convertToMap(String xmlStr) {
+        if (isNullOrEmpty(xmlStr)) {
+            throw new IllegalArgumentException("xml is empty");
+        }
+        try {
+            return readMap(INPUT_FACTORY.get().createXMLStreamReader(new StringReader(xmlStr)));
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("invalid xml: " + e.getMessage(), e);
+        }
+    }
 
-        Map<String, String> map = new HashMap<String, String>();
+    /**
+     * 将XML字节转换为Map对象，编码取XML声明中的encoding，没有声明时按UTF-8
+     *
+     * @param xml 要转换为Map对象的XML字节
+     * @return 根节点下子元素名到文本内容的映射
+     */
+    public static Map<String, String> convertToMap(byte[] xml) {
+        if (xml == null || xml.length == 0) {
+            throw new IllegalArgumentException("xml is empty");
+        }
+        return convertToMap(new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * 将XML字节转换为Map对象，读取position到limit之间的数据，不改变position
+     *
+     * @param xml 要转换为Map对象的XML字节
+     * @return 根节点下子元素名到文本内容的映射
+     */
+    public static Map<String, String> convertToMap(ByteBuffer xml) {
+        if (xml == null || !xml.hasRemaining()) {
+            throw new IllegalArgumentException("xml is empty");
+        }
+        if (xml.hasArray()) {
+            return convertToMap(new ByteArrayInputStream(xml.array(), xml.arrayOffset() + xml.position(), xml.remaining()));
+        }
+        return convertToMap(new ByteBufferInputStream(xml.duplicate()));
+    }
+
+    /**
+     * 流式读取XML并转换为Map对象，不关闭输入流
+     *
+     * @param in XML输入流
+     * @return 根节点下子元素名到文本内容的映射
+     */
+    public static Map<String, String> convertToMap(InputStream in) {
+        if (in == null) {
+            throw new IllegalArgumentException("xml is empty");
+        }
+        try {
+            return readMap(INPUT_FACTORY.get().createXMLStreamReader(in));
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("invalid xml: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 将XML字符串绑定到对象，根节点名不限，见{@link XMLElement}
+     *
+     * @param xmlStr 要转换的XML字符串
+     * @param type   对象类型，需要无参构造函数
+     * @return 绑定后的对象
+     */
+    public static <T> T convertToBean(String xmlStr, Class<T> type) {
         if (isNullOrEmpty(xmlStr)) {
             throw new IllegalArgumentException("xml is empty");
-        } else {
-            Document document = null;
-            try {
-                DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-                try {
-                    DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-                    InputStream is = new ByteArrayInputStream(xmlStr.getBytes());
-                    document = documentBuilder.parse(is);
-                } catch (ParserConfigurationException e) {
-                    System.out.println(e.getMessage() + e);
-                } catch (org.xml.sax.SAXException e) {
-                    e.printStackTrace();
-                    System.out.println(e.getMessage() + e);
-                }
+        }
+        try {
+            return readBean(INPUT_FACTORY.get().createXMLStreamReader(new StringReader(xmlStr)), type);
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("invalid xml: " + e.getMessage(), e);
+        }
+    }
 
-            } catch (IOException e) {
-                System.out.println(e.getMessage() + e);
-            }
+    /**
+     * 将XML字节绑定到对象，编码取XML声明中的encoding，没有声明时按UTF-8
+     *
+     * @param xml  要转换的XML字节
+     * @param type 对象类型，需要无参构造函数
+     * @return 绑定后的对象
+     */
+    public static <T> T convertToBean(byte[] xml, Class<T> type) {
+        if (xml == null || xml.length == 0) {
+            throw new IllegalArgumentException("xml is empty");
+        }
+        return convertToBean(new ByteArrayInputStream(xml), type);
+    }
+
+    /**
+     * 流式读取XML并绑定到对象，不关闭输入流
+     *
+     * @param in   XML输入流
+     * @param type 对象类型，需要无参构造函数
+     * @return 绑定后的对象
+     */
+    public static <T> T convertToBean(InputStream in, Class<T> type) {
+        if (in == null) {
+            throw new IllegalArgumentException("xml is empty");
+        }
+        try {
+            return readBean(INPUT_FACTORY.get().createXMLStreamReader(in), type);
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("invalid xml: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 将对象转换为XML字符串，根节点为xml，值为null的字段不输出
+     *
+     * @param bean    要转换的对象
+     * @param options 写入选项，SORTED对对象不生效，按字段声明顺序输出
+     * @return
+     */
+    public static String convertBeanToXML(Object bean, WriteOption... options) {
+        StringBuilder out = output();
+        writeBean(bean, out, has(options, WriteOption.CDATA));
+        return out.toString();
+    }
+
+    /**
+     * 将对象写为XML，根节点为xml，值为null的字段不输出
+     *
+     * @param bean    要转换的对象
+     * @param out     输出目标，StringBuilder直接写入，其他目标一次性追加
+     * @param options 写入选项，SORTED对对象不生效，按字段声明顺序输出
+     */
+    public static void writeBeanXML(Object bean, Appendable out, WriteOption... options) {
+        boolean cdata = has(options, WriteOption.CDATA);
+        if (out instanceof StringBuilder) {
+            writeBean(bean, (StringBuilder) out, cdata);
+            return;
+        }
+        StringBuilder builder = output();
+        writeBean(bean, builder, cdata);
+        try {
+            out.append(builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    private static void writeBean(Object bean, StringBuilder out, boolean cdata) {
+        out.append("<xml>");
+        XMLBinding.of(bean.getClass()).write(bean, out, cdata);
+        out.append("</xml>");
+    }
 
-            Element element = document.getDocumentElement();
-            if (element != null) {
-                NodeList nodeList = element.getChildNodes();
-                for (int i = 0; i < nodeList.getLength(); i++) {
-                    Node node = nodeList.item(i);
-                    String nodeName = node.getNodeName();
-                    String nodeText = node.getTextContent();
-                    if ("#text".equals(nodeName)) {
-                        continue;
-                    }
-                    map.put(nodeName, nodeText);
+    private static <T> T readBean(XMLStreamReader reader, Class<T> type) throws XMLStreamException {
+        XMLBinding binding = XMLBinding.of(type);
+        StringBuilder text = TEXT.get();
+        try {
+            reader.nextTag();
+            return type.cast(binding.read(reader, text));
+        } finally {
+            reader.close();
+            if (text.capacity() > MAX_CACHED_TEXT) {
+                TEXT.remove();
+            }
+        }
+    }
+
+    /**
+     * 读取根节点下的子元素，子元素内部的所有文本拼接为值
+     */
+    private static Map<String, String> readMap(XMLStreamReader reader) throws XMLStreamException {
+        Map<String, String> map = new HashMap<String, String>();
+        StringBuilder text = TEXT.get();
+        try {
+            int depth = 0;
+            String name = null;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (++depth == 2) {
+                            name = reader.getLocalName();
+                            text.setLength(0);
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (depth >= 2) {
+                            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (depth-- == 2) {
+                            map.put(name, text.toString());
+                        }
+                        break;
+                    default:
+                        break;
                 }
             }
+            return map;
+        } finally {
+            reader.close();
+            if (text.capacity() > MAX_CACHED_TEXT) {
+                TEXT.remove();
+            }
         }
-        return map;
     }
 
     /**
@@ -136,4 +466,38 @@ public class XMLUtil {
     public static boolean isNullOrEmpty(String xmlStr) {
         return (null == xmlStr || "".equals(xmlStr));
     }
+
+    /**
+     * 直接读取ByteBuffer的输入流
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
@@ -1,8 +1,47 @@
 package cn.algo.yu;
 
-import java.io.*;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 /**
  * @Author: MachineGeek
@@ -11,7 +50,19 @@ import java.util.zip.ZipOutputStream;
  * @Date: 2020/11/10
  */
 public class ZipUtil {
-    private static final int BUFFER_SIZE = 2 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // 读入内存的条目最大长度，即数组的长度上限
+    private static final int MAX_ENTRY_LENGTH = Integer.MAX_VALUE - 8;
+    // 分块压缩时用前一块末尾的32KB作为字典，压缩率接近整体压缩
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    // 已经压缩过的格式，默认不再压缩
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+        "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "lz4", "jar", "war",
+        "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "m4a", "mkv", "avi", "mov", "flv"));
+    // 每个压缩级别最多保留的Deflater个数，多出的直接释放本地内存
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    // 每个压缩级别一个Deflater池，下标为级别+1；压缩线程池每次调用都会新建，不能按线程缓存
+    private static final BlockingQueue<Deflater>[] DEFLATERS = deflaterPools();
 
     /**
      * @param input
@@ -23,60 +74,708 @@ public class ZipUtil {
      */
     public static void compressionToZip(String input, String output) {
         File target = new File(input);
-        if (target.exists() && target.length() > 0) {
-            ZipOutputStream zipOutputStream = null;
+        if (target.exists()) {
+            compress(target.toPath(), Paths.get(output));
+        }
+    }
+
+    /**
+     * 按默认选项把文件或目录压缩到ZIP文件，见{@link #compress(Path, OutputStream, Options)}
+     */
+    public static void compress(Path source, Path target) {
+        compress(source, target, new Options());
+    }
+
+    /**
+     * 把文件或目录压缩到ZIP文件，见{@link #compress(Path, OutputStream, Options)}
+     */
+    public static void compress(Path source, Path target, Options options) {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE)) {
+            compress(source, out, options, target);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把文件或目录压缩为ZIP写入输出流，不关闭输出流
+     * 条目名相对于source的上级目录，保留目录结构，空文件和空目录都会写入；条目按名字排序。
+     * 文件切成固定大小的块在线程池上并行压缩，按顺序拼接成一个完整的deflate流（与pigz相同的做法），
+     * 已经压缩过的格式按STORED原样存储。
+     *
+     * @param source  文件或目录
+     * @param out     输出流
+     * @param options 压缩选项
+     */
+    public static void compress(Path source, OutputStream out, Options options) {
+        try {
+            compress(source, out, options, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void compress(Path source, OutputStream out, Options options, Path exclude) throws IOException {
+        List<Source> sources = walk(source, exclude, options.stored);
+        ExecutorService executor = options.executor;
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(options.parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "ZipUtil-deflate");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        try {
+            new Pipeline(sources, new ZipWriter(out), options, executor).run();
+        } finally {
+            if (options.executor == null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * 使用CPU核数个线程把ZIP解压到目录，见{@link #extract(Path, Path, int)}
+     */
+    public static void extract(Path zip, Path target) {
+        extract(zip, target, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 并行解压ZIP到目录
+     * 通过中央目录定位条目，多个条目在线程池上同时解压，大的条目先提交。
+     * 条目名解析后必须位于目标目录内（防止zip slip），否则抛出异常且不写入任何文件；已存在的文件会被覆盖。
+     *
+     * @param zip         ZIP文件
+     * @param target      目标目录，不存在时创建
+     * @param parallelism 并行度
+     */
+    public static void extract(Path zip, Path target, int parallelism) {
+        Path root = target.toAbsolutePath().normalize();
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            List<ZipEntry> files = new ArrayList<>();
+            List<Path> paths = new ArrayList<>();
+            // 先校验全部条目，再开始写入
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                Path path = resolve(root, entry);
+                if (!entry.isDirectory()) {
+                    files.add(entry);
+                    paths.add(path);
+                }
+            }
+            Files.createDirectories(root);
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                if (entry.isDirectory()) {
+                    Files.createDirectories(resolve(root, entry));
+                }
+            }
+            Integer[] order = new Integer[files.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong((Integer i) -> files.get(i).getSize()).reversed());
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(parallelism, 1), runnable -> {
+                Thread thread = new Thread(runnable, "ZipUtil-inflate");
+                thread.setDaemon(true);
+                return thread;
+            });
             try {
-                zipOutputStream = new ZipOutputStream(new FileOutputStream(output));
-                compression(target, zipOutputStream, target.getName());
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
+                List<Future<?>> futures = new ArrayList<>(order.length);
+                for (Integer i : order) {
+                    ZipEntry entry = files.get(i);
+                    Path path = paths.get(i);
+                    futures.add(executor.submit(() -> {
+                        Files.createDirectories(path.getParent());
+                        try (InputStream in = zipFile.getInputStream(entry)) {
+                            Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        if (entry.getLastModifiedTime() != null) {
+                            Files.setLastModifiedTime(path, entry.getLastModifiedTime());
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    await(future);
+                }
             } finally {
-                if (zipOutputStream != null) {
-                    try {
-                        zipOutputStream.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                executor.shutdownNow();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 读取ZIP中的单个条目，只读取中央目录和该条目的数据，不扫描整个文件
+     *
+     * @param zip  ZIP文件
+     * @param name 条目名
+     * @return 条目内容，条目不存在时返回null
+     * @throws UncheckedIOException 条目损坏，或实际长度与中央目录声明的不一致时
+     */
+    public static byte[] readEntry(Path zip, String name) {
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            ZipEntry entry = zipFile.getEntry(name);
+            if (entry == null) {
+                return null;
+            }
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                return readAll(in, entry.getSize());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把ZIP中的单个条目写入输出流，不关闭输出流
+     *
+     * @param zip  ZIP文件
+     * @param name 条目名
+     * @param out  输出流
+     * @return 条目是否存在
+     */
+    public static boolean copyEntry(Path zip, String name, OutputStream out) {
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            ZipEntry entry = zipFile.getEntry(name);
+            if (entry == null) {
+                return false;
+            }
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
                 }
             }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
     /**
-     * @param source
-     * @param output
-     * @param name
-     * @Author: MachineGeek
-     * @Description: 递归压缩文件和目录
-     * @Date: 12:02 下午
-     * @Return: void
+     * 按顺序流式遍历ZIP中的条目，不需要随机访问，适合网络流
+     * 传给visitor的输入流只在回调内有效，关闭它不会关闭整个ZIP流；本方法不关闭in。
+     *
+     * @param in      ZIP输入流
+     * @param visitor 条目处理函数
      */
-    private static void compression(File source, ZipOutputStream output, String name) {
-        BufferedInputStream bufferedInputStream = null;
+    public static void forEachEntry(InputStream in, EntryVisitor visitor) {
+        ZipInputStream zipInputStream = new ZipInputStream(in);
+        InputStream content = new FilterInputStream(zipInputStream) {
+            @Override
+            public void close() {
+                // 由forEachEntry负责，不关闭底层的ZIP流
+            }
+        };
         try {
-            if (source.isFile()) {
-                byte[] buffer = new byte[BUFFER_SIZE];
-                bufferedInputStream = new BufferedInputStream(new FileInputStream(source));
-                output.putNextEntry(new ZipEntry(name));
-                int len;
-                while ((len = bufferedInputStream.read(buffer, 0, buffer.length)) != -1) {
-                    output.write(buffer, 0, len);
-                }
-                output.closeEntry();
-                bufferedInputStream.close();
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                visitor.visit(entry, content);
+                zipInputStream.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 解析条目在目标目录下的路径，防止zip slip
+     */
+    private static Path resolve(Path root, ZipEntry entry) throws IOException {
+        Path path = root.resolve(entry.getName()).normalize();
+        if (!path.startsWith(root) || path.equals(root) && !entry.isDirectory()) {
+            throw new IOException("Entry is outside of the target directory: " + entry.getName());
+        }
+        return path;
+    }
+
+    /**
+     * 读取条目的全部内容
+     * 中央目录里的长度由ZIP的生成方决定，只作为提示：缓冲区最初不超过BUFFER_SIZE，读取时按需扩容，读完后再与声明的长度核对。
+     *
+     * @param size 声明的长度，未知时为-1
+     */
+    private static byte[] readAll(InputStream in, long size) throws IOException {
+        byte[] buffer = new byte[size >= 0 && size < BUFFER_SIZE ? (int) size : BUFFER_SIZE];
+        int count = 0;
+        int read;
+        while (true) {
+            if (count == buffer.length) {
+                // 多读一个字节确认已到末尾，否则扩容
+                int next = in.read();
+                if (next < 0) {
+                    break;
+                }
+                if (buffer.length == MAX_ENTRY_LENGTH) {
+                    throw new ZipException("Entry is too large");
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(Math.max((long) buffer.length << 1, BUFFER_SIZE), MAX_ENTRY_LENGTH));
+                buffer[count++] = (byte) next;
+            }
+            read = in.read(buffer, count, buffer.length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        if (size >= 0 && count != size) {
+            throw new ZipException("Entry size mismatch: declared " + size + ", actual " + count);
+        }
+        return count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 遍历文件树，跟随符号链接，返回按条目名排序的列表
+     */
+    private static List<Source> walk(Path source, Path exclude, Predicate<Path> stored) throws IOException {
+        Path root = source.toAbsolutePath().normalize();
+        Path base = root.getParent() == null ? root : root.getParent();
+        Path excluded = exclude == null ? null : exclude.toAbsolutePath().normalize();
+        List<Source> sources = new ArrayList<>();
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = name(base, dir);
+                if (!name.isEmpty()) {
+                    sources.add(new Source(dir, name + "/", true, false, 0L, attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !file.equals(excluded)) {
+                    sources.add(new Source(file, name(base, file), false, stored.test(file), attrs.size(),
+                        attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        sources.sort(Comparator.comparing(s -> s.name));
+        return sources;
+    }
+
+    private static String name(Path base, Path path) {
+        String name = base.relativize(path).toString();
+        return File.separatorChar == '/' ? name : name.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * 按扩展名判断是否为已经压缩过的格式
+     */
+    private static boolean isCompressed(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 压缩一块数据，非最后一块以SYNC_FLUSH结束，保证字节对齐可以直接拼接
+     */
+    private static Block deflate(FileChannel channel, long offset, int length, boolean last, int level) throws IOException {
+        int dictionary = (int) Math.min(DICTIONARY_SIZE, offset);
+        byte[] input = new byte[dictionary + length];
+        int read = readFully(channel, offset - dictionary, input) - dictionary;
+        read = Math.max(read, 0);
+        CRC32 crc = new CRC32();
+        crc.update(input, dictionary, read);
+        byte[] output = new byte[read + (read >>> 8) + 64];
+        int count = 0;
+        Deflater deflater = deflater(level);
+        try {
+            if (dictionary > 0) {
+                deflater.setDictionary(input, 0, dictionary);
+            }
+            deflater.setInput(input, dictionary, read);
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (count == output.length) {
+                        output = Arrays.copyOf(output, output.length << 1);
+                    }
+                    count += deflater.deflate(output, count, output.length - count);
+                }
             } else {
-                File[] files = source.listFiles();
-                if (null != files && files.length > 0) {
-                    for (File file : files) {
-                        compression(file, output, "/" + file.getName());
+                while (true) {
+                    count += deflater.deflate(output, count, output.length - count, Deflater.SYNC_FLUSH);
+                    if (count < output.length) {
+                        break;
+                    }
+                    output = Arrays.copyOf(output, output.length << 1);
+                }
+            }
+        } finally {
+            release(deflater, level);
+        }
+        return new Block(output, count, crc.getValue(), read);
+    }
+
+    /**
+     * 计算整个文件的CRC，给STORED条目写文件头用
+     */
+    private static Block checksum(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0L;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = channel.read(ByteBuffer.wrap(buffer))) != -1) {
+                crc.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        return new Block(null, 0, crc.getValue(), size);
+    }
+
+    /**
+     * 从position开始读满数组，文件结束时提前返回
+     *
+     * @return 读到的字节数
+     */
+    private static int readFully(FileChannel channel, long position, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = channel.read(ByteBuffer.wrap(buffer, total, buffer.length - total), position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BlockingQueue<Deflater>[] deflaterPools() {
+        BlockingQueue<Deflater>[] pools = (BlockingQueue<Deflater>[]) new BlockingQueue<?>[11];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ArrayBlockingQueue<>(POOL_SIZE);
+        }
+        return pools;
+    }
+
+    /**
+     * 从池中取出指定级别、不带zlib头的Deflater
+     */
+    private static Deflater deflater(int level) {
+        Deflater deflater = DEFLATERS[level + 1].poll();
+        return deflater == null ? new Deflater(level, true) : deflater;
+    }
+
+    private static void release(Deflater deflater, int level) {
+        deflater.reset();
+        if (!DEFLATERS[level + 1].offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 合并两段数据的CRC32，crc2是长度为length2的第二段数据的CRC，移植自zlib的crc32_combine
+     */
+    static long crc32Combine(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        // CRC-32多项式
+        odd[0] = 0xEDB88320L;
+        long row = 1L;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0L;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+
+    /**
+     * 流式遍历ZIP时的条目处理函数
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        /**
+         * @param entry   条目，流式读取时大小和CRC可能要读完数据后才知道
+         * @param content 条目内容
+         */
+        void visit(ZipEntry entry, InputStream content) throws IOException;
+    }
+
+    /**
+     * 压缩选项
+     */
+    public static class Options {
+        private int level = Deflater.DEFAULT_COMPRESSION;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int blockSize = 1024 * 1024;
+        private ExecutorService executor;
+        private Predicate<Path> stored = ZipUtil::isCompressed;
+
+        /**
+         * 压缩级别，0到9，-1为默认级别
+         */
+        public Options level(int level) {
+            if (level < -1 || level > 9) {
+                throw new IllegalArgumentException("level must be between -1 and 9");
+            }
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * 并行度，默认为CPU核数，同时也决定了预读的块数
+         */
+        public Options parallelism(int parallelism) {
+            this.parallelism = Math.max(parallelism, 1);
+            return this;
+        }
+
+        /**
+         * 分块大小，默认1MB，最小64KB
+         */
+        public Options blockSize(int blockSize) {
+            this.blockSize = Math.max(blockSize, 64 * 1024);
+            return this;
+        }
+
+        /**
+         * 执行压缩的线程池，由调用方负责关闭；不设置时每次压缩临时创建
+         */
+        public Options executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * 判断文件是否按STORED原样存储，默认是常见的压缩包、图片和音视频格式
+         */
+        public Options stored(Predicate<Path> stored) {
+            this.stored = stored;
+            return this;
+        }
+    }
+
+    /**
+     * 一个待写入的文件或目录
+     */
+    private static final class Source {
+        private final Path path;
+        private final String name;
+        private final boolean directory;
+        private final boolean stored;
+        private final long size;
+        private final long modified;
+        private FileChannel channel;
+
+        private Source(Path path, String name, boolean directory, boolean stored, long size, long modified) {
+            this.path = path;
+            this.name = name;
+            this.directory = directory;
+            this.stored = stored;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        private int blocks(int blockSize) {
+            return (int) Math.max((size + blockSize - 1) / blockSize, 1L);
+        }
+
+        private void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 只读通道关闭失败不影响结果
+                }
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * 一块压缩结果，STORED条目只有CRC和大小
+     */
+    private static final class Block {
+        private final byte[] data;
+        private final int length;
+        private final long crc;
+        private final long size;
+
+        private Block(byte[] data, int length, long crc, long size) {
+            this.data = data;
+            this.length = length;
+            this.crc = crc;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 生产者按条目顺序提交压缩任务，最多预读parallelism * 2块；写入方按同样的顺序取结果写出
+     */
+    private static final class Pipeline {
+        private final List<Source> sources;
+        private final ZipWriter writer;
+        private final Options options;
+        private final ExecutorService executor;
+        private final Deque<Future<Block>> window = new ArrayDeque<>();
+        private final int windowSize;
+        // 生产者的位置：下一个条目和该条目的下一块
+        private int nextSource;
+        private int nextBlock;
+
+        private Pipeline(List<Source> sources, ZipWriter writer, Options options, ExecutorService executor) {
+            this.sources = sources;
+            this.writer = writer;
+            this.options = options;
+            this.executor = executor;
+            this.windowSize = Math.max(options.parallelism * 2, 2);
+        }
+
+        private void run() throws IOException {
+            try {
+                fill();
+                for (Source source : sources) {
+                    if (source.directory) {
+                        writer.directory(source.name, source.modified);
+                    } else if (source.stored) {
+                        writeStored(source, take());
+                    } else {
+                        writeDeflated(source);
                     }
+                }
+                writer.finish();
+            } finally {
+                for (Future<Block> future : window) {
+                    future.cancel(false);
+                }
+                for (Source source : sources) {
+                    source.close();
+                }
+            }
+        }
+
+        private void writeDeflated(Source source) throws IOException {
+            writer.beginDeflated(source.name, source.modified, source.size);
+            int blocks = source.blocks(options.blockSize);
+            long crc = 0L;
+            long compressedSize = 0L;
+            long size = 0L;
+            for (int i = 0; i < blocks; i++) {
+                Block block = take();
+                writer.write(block.data, 0, block.length);
+                crc = crc32Combine(crc, block.crc, block.size);
+                compressedSize += block.length;
+                size += block.size;
+            }
+            source.close();
+            writer.end(crc, compressedSize, size);
+        }
+
+        /**
+         * 按预先算好的CRC写文件头，再原样复制文件，复制时重新校验
+         */
+        private void writeStored(Source source, Block checksum) throws IOException {
+            writer.beginStored(source.name, source.modified, checksum.crc, checksum.size);
+            CRC32 crc = new CRC32();
+            long size = 0L;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (FileChannel channel = FileChannel.open(source.path, StandardOpenOption.READ)) {
+                int read;
+                while ((read = channel.read(ByteBuffer.wrap(buffer))) != -1) {
+                    crc.update(buffer, 0, read);
+                    writer.write(buffer, 0, read);
+                    size += read;
+                }
+            }
+            writer.end(crc.getValue(), size, size);
+        }
+
+        private Block take() throws IOException {
+            Future<Block> future = window.poll();
+            fill();
+            return await(future);
+        }
+
+        /**
+         * 提交任务直到预读窗口填满或所有条目都已提交
+         */
+        private void fill() throws IOException {
+            while (window.size() < windowSize && nextSource < sources.size()) {
+                Source source = sources.get(nextSource);
+                if (source.directory) {
+                    nextSource++;
+                } else if (source.stored) {
+                    window.add(executor.submit(() -> checksum(source.path)));
+                    nextSource++;
                 } else {
-                    output.putNextEntry(new ZipEntry(name + "/"));
-                    output.closeEntry();
+                    if (nextBlock == 0) {
+                        source.channel = FileChannel.open(source.path, StandardOpenOption.READ);
+                    }
+                    FileChannel channel = source.channel;
+                    long offset = (long) nextBlock * options.blockSize;
+                    int blocks = source.blocks(options.blockSize);
+                    boolean last = nextBlock == blocks - 1;
+                    int level = options.level;
+                    // 以遍历时的大小为准，压缩过程中追加的内容不会写入
+                    int length = (int) Math.min(options.blockSize, source.size - offset);
+                    window.add(executor.submit(() -> deflate(channel, offset, length, last, level)));
+                    if (last) {
+                        nextSource++;
+                        nextBlock = 0;
+                    } else {
+                        nextBlock++;
+                    }
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
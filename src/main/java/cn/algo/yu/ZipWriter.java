@@ -0,0 +1,274 @@
+package cn.algo.yu;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ZIP格式的顺序写入器
+ * 数据由调用方压缩好后写入，自己只负责本地文件头、数据描述符、中央目录和结束记录。
+ * 文件名按UTF-8编码，大小、偏移量或条目数超过32位时自动使用Zip64扩展。
+ */
+final class ZipWriter {
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    // 原始大小超过这个值的压缩条目使用Zip64
+    private static final long ZIP64_THRESHOLD = 0xFF000000L;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END = 0x06054b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    // 通用标志位：3 数据描述符，11 文件名为UTF-8
+    private static final int FLAG_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    // MS-DOS的目录属性
+    private static final int DIRECTORY_ATTRIBUTE = 0x10;
+
+    private final OutputStream out;
+    private final List<Entry> entries = new ArrayList<>();
+    private final byte[] scratch = new byte[64];
+    private long written;
+    private Entry current;
+
+    ZipWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * 写入目录条目，名字以/结尾
+     */
+    void directory(String name, long modifiedMillis) throws IOException {
+        Entry entry = new Entry(name.endsWith("/") ? name : name + "/", STORED, modifiedMillis, false);
+        entry.directory = true;
+        writeLocalHeader(entry);
+        entries.add(entry);
+    }
+
+    /**
+     * 开始一个压缩条目，CRC和大小写在随后的数据描述符中
+     *
+     * @param size 原始大小，用于判断是否需要Zip64
+     */
+    void beginDeflated(String name, long modifiedMillis, long size) throws IOException {
+        // 不可压缩的数据压缩后会略大于原始大小，留出余量
+        current = new Entry(name, DEFLATED, modifiedMillis, size >= ZIP64_THRESHOLD);
+        writeLocalHeader(current);
+    }
+
+    /**
+     * 开始一个不压缩的条目，需要事先知道CRC和大小
+     */
+    void beginStored(String name, long modifiedMillis, long crc, long size) throws IOException {
+        current = new Entry(name, STORED, modifiedMillis, size >= ZIP64_MAGIC);
+        current.crc = crc;
+        current.compressedSize = size;
+        current.size = size;
+        writeLocalHeader(current);
+    }
+
+    void write(byte[] data, int offset, int length) throws IOException {
+        out.write(data, offset, length);
+        written += length;
+    }
+
+    /**
+     * 结束当前条目，压缩条目写出数据描述符
+     */
+    void end(long crc, long compressedSize, long size) throws IOException {
+        Entry entry = current;
+        current = null;
+        if (!entry.zip64 && (size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC)) {
+            throw new IOException("File changed while archiving: " + entry.name);
+        }
+        if (entry.method == DEFLATED) {
+            entry.crc = crc;
+            entry.compressedSize = compressedSize;
+            entry.size = size;
+            int index = putInt(0, DATA_DESCRIPTOR);
+            index = putInt(index, (int) crc);
+            if (entry.zip64) {
+                index = putLong(index, compressedSize);
+                index = putLong(index, size);
+            } else {
+                index = putInt(index, (int) compressedSize);
+                index = putInt(index, (int) size);
+            }
+            write(scratch, 0, index);
+        } else if (entry.size != size || entry.crc != crc) {
+            throw new IOException("File changed while archiving: " + entry.name);
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * 写出中央目录和结束记录，不关闭输出流
+     */
+    void finish() throws IOException {
+        long directoryOffset = written;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long directorySize = written - directoryOffset;
+        boolean zip64 = entries.size() >= 0xFFFF || directoryOffset >= ZIP64_MAGIC || directorySize >= ZIP64_MAGIC;
+        if (zip64) {
+            long endOffset = written;
+            int index = putInt(0, ZIP64_END);
+            index = putLong(index, 44L);
+            index = putShort(index, VERSION_ZIP64);
+            index = putShort(index, VERSION_ZIP64);
+            index = putInt(index, 0);
+            index = putInt(index, 0);
+            index = putLong(index, entries.size());
+            index = putLong(index, entries.size());
+            index = putLong(index, directorySize);
+            index = putLong(index, directoryOffset);
+            write(scratch, 0, index);
+            index = putInt(0, ZIP64_LOCATOR);
+            index = putInt(index, 0);
+            index = putLong(index, endOffset);
+            index = putInt(index, 1);
+            write(scratch, 0, index);
+        }
+        int index = putInt(0, END);
+        index = putShort(index, 0);
+        index = putShort(index, 0);
+        index = putShort(index, Math.min(entries.size(), 0xFFFF));
+        index = putShort(index, Math.min(entries.size(), 0xFFFF));
+        index = putInt(index, (int) Math.min(directorySize, ZIP64_MAGIC));
+        index = putInt(index, (int) Math.min(directoryOffset, ZIP64_MAGIC));
+        index = putShort(index, 0);
+        write(scratch, 0, index);
+        out.flush();
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        entry.offset = written;
+        boolean descriptor = entry.method == DEFLATED;
+        int index = putInt(0, LOCAL_HEADER);
+        index = putShort(index, entry.zip64 ? VERSION_ZIP64 : VERSION);
+        index = putShort(index, FLAG_UTF8 | (descriptor ? FLAG_DESCRIPTOR : 0));
+        index = putShort(index, entry.method);
+        index = putInt(index, entry.dosTime);
+        index = putInt(index, descriptor ? 0 : (int) entry.crc);
+        if (entry.zip64) {
+            index = putInt(index, (int) ZIP64_MAGIC);
+            index = putInt(index, (int) ZIP64_MAGIC);
+        } else {
+            index = putInt(index, descriptor ? 0 : (int) entry.compressedSize);
+            index = putInt(index, descriptor ? 0 : (int) entry.size);
+        }
+        index = putShort(index, entry.nameBytes.length);
+        index = putShort(index, entry.zip64 ? 20 : 0);
+        write(scratch, 0, index);
+        write(entry.nameBytes, 0, entry.nameBytes.length);
+        if (entry.zip64) {
+            index = putShort(0, ZIP64_EXTRA);
+            index = putShort(index, 16);
+            index = putLong(index, descriptor ? 0L : entry.size);
+            index = putLong(index, descriptor ? 0L : entry.compressedSize);
+            write(scratch, 0, index);
+        }
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        boolean sizeOverflow = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+        boolean offsetOverflow = entry.offset >= ZIP64_MAGIC;
+        int extraLength = (sizeOverflow ? 16 : 0) + (offsetOverflow ? 8 : 0);
+        boolean zip64 = extraLength > 0 || entry.zip64;
+        int index = putInt(0, CENTRAL_HEADER);
+        index = putShort(index, VERSION_ZIP64);
+        index = putShort(index, zip64 ? VERSION_ZIP64 : VERSION);
+        index = putShort(index, FLAG_UTF8 | (entry.method == DEFLATED ? FLAG_DESCRIPTOR : 0));
+        index = putShort(index, entry.method);
+        index = putInt(index, entry.dosTime);
+        index = putInt(index, (int) entry.crc);
+        index = putInt(index, (int) (sizeOverflow ? ZIP64_MAGIC : entry.compressedSize));
+        index = putInt(index, (int) (sizeOverflow ? ZIP64_MAGIC : entry.size));
+        index = putShort(index, entry.nameBytes.length);
+        index = putShort(index, extraLength == 0 ? 0 : extraLength + 4);
+        index = putShort(index, 0);
+        index = putShort(index, 0);
+        index = putShort(index, 0);
+        index = putInt(index, entry.directory ? DIRECTORY_ATTRIBUTE : 0);
+        index = putInt(index, (int) (offsetOverflow ? ZIP64_MAGIC : entry.offset));
+        write(scratch, 0, index);
+        write(entry.nameBytes, 0, entry.nameBytes.length);
+        if (extraLength > 0) {
+            index = putShort(0, ZIP64_EXTRA);
+            index = putShort(index, extraLength);
+            if (sizeOverflow) {
+                index = putLong(index, entry.size);
+                index = putLong(index, entry.compressedSize);
+            }
+            if (offsetOverflow) {
+                index = putLong(index, entry.offset);
+            }
+            write(scratch, 0, index);
+        }
+    }
+
+    private int putShort(int index, int value) {
+        scratch[index] = (byte) value;
+        scratch[index + 1] = (byte) (value >>> 8);
+        return index + 2;
+    }
+
+    private int putInt(int index, int value) {
+        putShort(index, value);
+        return putShort(index + 2, value >>> 16);
+    }
+
+    private int putLong(int index, long value) {
+        putInt(index, (int) value);
+        return putInt(index + 4, (int) (value >>> 32));
+    }
+
+    /**
+     * 转换为MS-DOS的日期时间，低16位是时间，高16位是日期，1980年以前按1980年1月1日
+     */
+    private static int dosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+            | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final byte[] nameBytes;
+        private final int method;
+        private final int dosTime;
+        // 本地文件头是否带Zip64扩展，决定数据描述符中大小的字节数
+        private final boolean zip64;
+        private boolean directory;
+        private long offset;
+        private long crc;
+        private long compressedSize;
+        private long size;
+
+        private Entry(String name, int method, long modifiedMillis, boolean zip64) {
+            this.name = name;
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Entry name too long: " + name);
+            }
+            this.method = method;
+            this.dosTime = dosTime(modifiedMillis);
+            this.zip64 = zip64;
+        }
+    }
+}